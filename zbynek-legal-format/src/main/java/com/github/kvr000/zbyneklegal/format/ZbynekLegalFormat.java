@@ -1,6 +1,8 @@
 package com.github.kvr000.zbyneklegal.format;
 
 import com.github.kvr000.zbyneklegal.format.command.AddPageNumbersCommand;
+import com.github.kvr000.zbyneklegal.format.command.BatchCommand;
+import com.github.kvr000.zbyneklegal.format.command.DaemonCommand;
 import com.github.kvr000.zbyneklegal.format.command.DocIndexCommand;
 import com.github.kvr000.zbyneklegal.format.command.JoinExhibitCommand;
 import com.github.kvr000.zbyneklegal.format.command.MergeInkCommand;
@@ -15,8 +17,13 @@ import com.github.kvr000.zbyneklegal.format.command.SyncFilesCommand;
 import com.github.kvr000.zbyneklegal.format.command.TabConfigToTextCommand;
 import com.github.kvr000.zbyneklegal.format.command.UpdateChecksumCommand;
 import com.github.kvr000.zbyneklegal.format.command.ZipCommand;
+import com.github.kvr000.zbyneklegal.format.file.FileChecksums;
+import com.github.kvr000.zbyneklegal.format.format.SizeFormat;
+import com.github.kvr000.zbyneklegal.format.pdf.PdfFiles;
+import com.github.kvr000.zbyneklegal.format.pdf.PdfPageScanner;
 import com.github.kvr000.zbyneklegal.format.storage.DelegatingStorageRepository;
 import com.github.kvr000.zbyneklegal.format.storage.googledrive.GoogleDriveStorageRepository;
+import com.github.kvr000.zbyneklegal.format.storage.local.LocalStorageRepository;
 import com.github.kvr000.zbyneklegal.format.storage.StorageRepository;
 import com.github.kvr000.zbyneklegal.format.table.TableUpdatorFactory;
 import com.google.common.base.Suppliers;
@@ -34,6 +41,7 @@ import net.dryuf.cmdline.app.BeanFactory;
 import net.dryuf.cmdline.app.CommonAppContext;
 import net.dryuf.cmdline.app.guice.GuiceBeanFactory;
 import net.dryuf.cmdline.command.AbstractParentCommand;
+import net.dryuf.cmdline.command.ChildCommandContext;
 import net.dryuf.cmdline.command.Command;
 import net.dryuf.cmdline.command.CommandContext;
 import net.dryuf.cmdline.command.HelpOfHelpCommand;
@@ -56,22 +64,78 @@ import java.util.Map;
 @Log4j2
 public class ZbynekLegalFormat extends AbstractParentCommand
 {
+	private final PdfPageScanner pageScanner;
+
+	/** Options of the command running this one, null for top level command. */
+	private Options parentOptions;
+
 	private Options options;
 
 	public static void main(String[] args)
 	{
 		runMain(args, (args0) -> {
 			AppContext appContext = new CommonAppContext(Guice.createInjector(new GuiceModule()).getInstance(BeanFactory.class));
-			return appContext.getBeanFactory().getBean(ZbynekLegalFormat.class).run(
-				new RootCommandContext(appContext).createChild(null, "zbynek-legal-format", null),
-				Arrays.asList(args0)
-			);
+			return runCommand(appContext, Arrays.asList(args0));
 		});
 	}
 
+	/**
+	 * Runs single command line within existing application context, sharing its singletons.
+	 *
+	 * @return
+	 * 	exit code of the command
+	 */
+	public static int runCommand(AppContext appContext, List<String> args) throws Exception
+	{
+		return runCommand(appContext, null, args);
+	}
+
+	/**
+	 * Runs single command line within application context of the running command.  Memory limit and stamp cache
+	 * of the running command apply, unless specified on the command line.
+	 *
+	 * @return
+	 * 	exit code of the command
+	 */
+	public static int runCommand(CommandContext context, List<String> args) throws Exception
+	{
+		Options parentOptions = null;
+		for (;;) {
+			if (parentOptions == null && context instanceof ChildCommandContext child && child.getParentCommand() instanceof ZbynekLegalFormat main) {
+				parentOptions = main.options;
+			}
+			if (context.getParentContext() == null) {
+				break;
+			}
+			context = context.getParentContext();
+		}
+		return runCommand(context.getAppContext(), parentOptions, args);
+	}
+
+	private static int runCommand(AppContext appContext, Options parentOptions, List<String> args) throws Exception
+	{
+		ZbynekLegalFormat main = appContext.getBeanFactory().getBean(ZbynekLegalFormat.class);
+		main.parentOptions = parentOptions;
+		return main.run(
+			new RootCommandContext(appContext).createChild(null, "zbynek-legal-format", null),
+			args
+		);
+	}
+
 	protected CommandContext createChildContext(CommandContext commandContext, String name, boolean isHelp)
 	{
-		return commandContext.createChild(this, name, Map.of(Options.class, options));
+		if (parentOptions != null) {
+			if (options.memoryLimit == null) {
+				options.memoryLimit = parentOptions.memoryLimit;
+			}
+			if (options.stampCache == null) {
+				options.stampCache = parentOptions.stampCache;
+			}
+		}
+		return commandContext.createChild(this, name, Map.of(
+			Options.class, options,
+			PdfFiles.class, new PdfFiles(pageScanner, options.memoryLimit)
+		));
 	}
 
 	@Override
@@ -94,6 +158,14 @@ public class ZbynekLegalFormat extends AbstractParentCommand
 			options.listFileKeys.add(needArgsParam(null, args));
 			return true;
 
+		case "--memory-limit":
+			options.memoryLimit = SizeFormat.parseSize(needArgsParam(options.memoryLimit, args));
+			return true;
+
+		case "--stamp-cache":
+			options.stampCache = needArgsParam(options.stampCache, args);
+			return true;
+
 		default:
 			return super.parseOption(context, arg, args);
 		}
@@ -118,7 +190,9 @@ public class ZbynekLegalFormat extends AbstractParentCommand
 			"-o output", "output filename",
 			"-l list-file", "index file",
 			"-s list-sheet", "index sheet",
-			"-k column-name", "multiple, key column in index file for the specific operation, suffixed with Exh and Pg"
+			"-k column-name", "multiple, key column in index file for the specific operation, suffixed with Exh and Pg",
+			"--memory-limit size[BKMG]", "max memory for PDF streams per document, the rest is cached in temporary files",
+			"--stamp-cache directory", "cache of stamped exhibits, reused by join-exhibit and doc-index when input and stamp are unchanged"
 		);
 	}
 
@@ -141,6 +215,8 @@ public class ZbynekLegalFormat extends AbstractParentCommand
 			.put("pdf-decompress", PdfDecompressCommand.class)
 			.put("pdf-empty", PdfEmptyCommand.class)
 			.put("merge-ink", MergeInkCommand.class)
+			.put("batch", BatchCommand.class)
+			.put("daemon", DaemonCommand.class)
 			.put("help", HelpOfHelpCommand.class)
 			.build();
 	}
@@ -163,6 +239,8 @@ public class ZbynekLegalFormat extends AbstractParentCommand
 			.put("pdf-decompress", "Internally decompresses the pdf")
 			.put("pdf-empty", "Creates empty (zero pages) pdf")
 			.put("merge-ink", "Merges ink from printed pages into original document")
+			.put("batch", "Runs commands from script in single process")
+			.put("daemon", "Runs commands received on local socket, keeping the process warm")
 			.put("help [command]", "Prints help")
 			.build();
 	}
@@ -177,6 +255,10 @@ public class ZbynekLegalFormat extends AbstractParentCommand
 		String listSheet;
 
 		List<String> listFileKeys = new ArrayList<>();
+
+		Long memoryLimit;
+
+		String stampCache;
 	}
 
 	public static class GuiceModule extends AbstractModule
@@ -190,9 +272,10 @@ public class ZbynekLegalFormat extends AbstractParentCommand
 
 		@Provides
 		@Singleton
-		public StorageRepository storageRepository() throws IOException {
+		public StorageRepository storageRepository(FileChecksums fileChecksums) throws IOException {
 			return new DelegatingStorageRepository(ImmutableMap.of(
-					"https://drive.google.com/", Suppliers.memoize(GoogleDriveStorageRepository::new)
+					"https://drive.google.com/", Suppliers.memoize(GoogleDriveStorageRepository::new),
+					"file://localhost/", Suppliers.memoize(() -> new LocalStorageRepository(fileChecksums))
 			));
 		}
 
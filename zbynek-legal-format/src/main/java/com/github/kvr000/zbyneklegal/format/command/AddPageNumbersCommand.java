@@ -1,6 +1,7 @@
 package com.github.kvr000.zbyneklegal.format.command;
 
 import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
+import com.github.kvr000.zbyneklegal.format.pdf.PdfFiles;
 import com.github.kvr000.zbyneklegal.format.pdf.PdfRenderer;
 import com.github.kvr000.zbyneklegal.format.table.TableUpdator;
 import com.google.common.base.Stopwatch;
@@ -11,7 +12,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import net.dryuf.cmdline.command.AbstractCommand;
 import net.dryuf.cmdline.command.CommandContext;
-import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -20,7 +20,7 @@ import org.apache.pdfbox.pdmodel.PDPageTree;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 
 import javax.inject.Inject;
-import java.io.File;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -37,6 +37,8 @@ import java.util.stream.Stream;
 @RequiredArgsConstructor(onConstructor = @__(@Inject))
 public class AddPageNumbersCommand extends AbstractCommand
 {
+	private final PdfFiles pdfFiles;
+
 	private final ZbynekLegalFormat.Options mainOptions;
 
 	private Options options = new Options();
@@ -111,11 +113,10 @@ public class AddPageNumbersCommand extends AbstractCommand
 		PDFMergerUtility merger = new PDFMergerUtility();
 
 		pageCounter = options.relativePage;
-		try (PDDocument doc = new PDDocument()) {
+		try (PDDocument doc = pdfFiles.createDocument()) {
 			int fileCounter = 1;
 			for (String inputName: options.inputs) {
-				File inputFile = new File(inputName);
-				try (PDDocument input = Loader.loadPDF(inputFile); PdfRenderer renderer = new PdfRenderer(input)) {
+				try (PDDocument input = pdfFiles.load(Paths.get(inputName)); PdfRenderer renderer = new PdfRenderer(input)) {
 					PDPageTree allPages = input.getDocumentCatalog().getPages();
 
 					for (int i = 0; i < allPages.getCount(); i++) {
@@ -126,7 +127,7 @@ public class AddPageNumbersCommand extends AbstractCommand
 							page.setRotation(page.getRotation() + 90);
 						}
 						if ((options.markFiles.isEmpty() && options.markPages.isEmpty()) || options.markFiles.contains(fileCounter) || options.markPages.contains(pageCounter)) {
-							try (PDPageContentStream contentStream = new PDPageContentStream(input, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
+							try (PDPageContentStream contentStream = renderer.openOverlay(page)) {
 								renderer.renderPageNumber(contentStream, page, pageCounter);
 							}
 						}
@@ -0,0 +1,194 @@
+package com.github.kvr000.zbyneklegal.format.command;
+
+import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
+import com.github.kvr000.zbyneklegal.format.table.TableUpdatorFactory;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import net.dryuf.cmdline.command.AbstractCommand;
+import net.dryuf.cmdline.command.CommandContext;
+import org.apache.commons.io.IOUtils;
+
+import javax.inject.Inject;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Runs multiple command lines in single process.  Each line of the script contains full arguments, as passed to
+ * zbynek-legal-format.  The commands share singletons, such as remote storage clients and PDF settings, and the
+ * index files opened by previous commands.
+ */
+@Log4j2
+@RequiredArgsConstructor(onConstructor = @__(@Inject))
+public class BatchCommand extends AbstractCommand
+{
+	private final TableUpdatorFactory tableUpdatorFactory;
+
+	private Options options = new Options();
+
+	private CommandContext context;
+
+	@Override
+	protected boolean parseOption(CommandContext context, String arg, ListIterator<String> args) throws Exception
+	{
+		switch (arg) {
+			case "-k" -> {
+				options.keepGoing = true;
+				return true;
+			}
+		}
+		return super.parseOption(context, arg, args);
+	}
+
+	@Override
+	protected int parseNonOptions(CommandContext context, ListIterator<String> args) throws Exception
+	{
+		this.context = context;
+		if (!args.hasNext()) {
+			return usage(context, "script file is mandatory");
+		}
+		options.script = args.next();
+		if (args.hasNext()) {
+			return usage(context, "Unexpected parameters: " + args.next());
+		}
+		return EXIT_CONTINUE;
+	}
+
+	@Override
+	protected Map<String, String> configOptionsDescription(CommandContext context)
+	{
+		return ImmutableMap.of(
+			"-k", "keep going, continue with next commands when command fails"
+		);
+	}
+
+	@Override
+	protected Map<String, String> configParametersDescription(CommandContext context)
+	{
+		return ImmutableMap.of(
+			"script", "file with command lines, one per line, - for stdin; # starts comment, quoting as in shell"
+		);
+	}
+
+	@Override
+	public int execute() throws Exception
+	{
+		Stopwatch watch = Stopwatch.createStarted();
+
+		List<String> lines = options.script.equals("-") ?
+			IOUtils.readLines(System.in, StandardCharsets.UTF_8) :
+			Files.readAllLines(Paths.get(options.script));
+
+		int result = EXIT_SUCCESS;
+		Closeable shared = tableUpdatorFactory.shareTables();
+		try {
+			for (int i = 0; i < lines.size(); ++i) {
+				List<String> args = splitArguments(lines.get(i));
+				if (args.isEmpty()) {
+					continue;
+				}
+				Stopwatch stepWatch = Stopwatch.createStarted();
+				log.info("Running line {}: {}", i + 1, args);
+				int exit;
+				try {
+					exit = ZbynekLegalFormat.runCommand(context, args);
+				}
+				catch (Exception ex) {
+					log.error("Failed line {}: {}", i + 1, args, ex);
+					exit = EXIT_FAILURE;
+				}
+				log.info("Finished line {} with exit code {} in {} ms", i + 1, exit, stepWatch.elapsed(TimeUnit.MILLISECONDS));
+				if (exit != EXIT_SUCCESS) {
+					result = exit;
+					if (!options.keepGoing) {
+						break;
+					}
+				}
+			}
+		}
+		finally {
+			shared.close();
+		}
+
+		log.info("Processed in {} ms", watch.elapsed(TimeUnit.MILLISECONDS));
+		return result;
+	}
+
+	/**
+	 * Splits line into arguments, supporting single and double quotes and backslash escapes.
+	 */
+	static List<String> splitArguments(String line) throws IOException
+	{
+		List<String> args = new ArrayList<>();
+		StringBuilder current = null;
+		char quote = 0;
+		for (int i = 0; i < line.length(); ++i) {
+			char c = line.charAt(i);
+			if (quote == '\'') {
+				if (c == '\'') {
+					quote = 0;
+				}
+				else {
+					current.append(c);
+				}
+			}
+			else if (c == '\\') {
+				if (++i >= line.length()) {
+					throw new IOException("Trailing backslash in line: " + line);
+				}
+				current = current == null ? new StringBuilder() : current;
+				current.append(line.charAt(i));
+			}
+			else if (quote == '"') {
+				if (c == '"') {
+					quote = 0;
+				}
+				else {
+					current.append(c);
+				}
+			}
+			else if (Character.isWhitespace(c)) {
+				if (current != null) {
+					args.add(current.toString());
+					current = null;
+				}
+			}
+			else if (c == '#' && current == null) {
+				break;
+			}
+			else {
+				current = current == null ? new StringBuilder() : current;
+				if (c == '\'' || c == '"') {
+					quote = c;
+				}
+				else {
+					current.append(c);
+				}
+			}
+		}
+		if (quote != 0) {
+			throw new IOException("Unterminated quote in line: " + line);
+		}
+		if (current != null) {
+			args.add(current.toString());
+		}
+		return args;
+	}
+
+	public static class Options
+	{
+		String script;
+
+		boolean keepGoing;
+	}
+}
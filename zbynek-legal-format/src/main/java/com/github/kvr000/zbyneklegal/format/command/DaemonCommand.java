@@ -0,0 +1,199 @@
+package com.github.kvr000.zbyneklegal.format.command;
+
+import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
+import com.github.kvr000.zbyneklegal.format.daemon.DaemonProtocol;
+import com.github.kvr000.zbyneklegal.format.table.TableUpdatorFactory;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import net.dryuf.cmdline.command.AbstractCommand;
+import net.dryuf.cmdline.command.CommandContext;
+
+import javax.inject.Inject;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Runs commands received on Unix domain socket, within single long running process.  Commands are executed one by
+ * one, as they share standard output and error.  Index files stay open between commands, until modified.
+ *
+ * The process cannot change its working directory and commands resolve relative paths, including those read from the
+ * index, against it, so requests from clients running in other directory are rejected.
+ */
+@Log4j2
+@RequiredArgsConstructor(onConstructor = @__(@Inject))
+public class DaemonCommand extends AbstractCommand
+{
+	private final TableUpdatorFactory tableUpdatorFactory;
+
+	private Options options = new Options();
+
+	private CommandContext context;
+
+	@Override
+	protected boolean parseOption(CommandContext context, String arg, ListIterator<String> args) throws Exception
+	{
+		switch (arg) {
+			case "-S" -> {
+				options.socket = needArgsParam(options.socket, args);
+				return true;
+			}
+		}
+		return super.parseOption(context, arg, args);
+	}
+
+	@Override
+	protected int validateOptions(CommandContext context, ListIterator<String> args) throws Exception
+	{
+		this.context = context;
+		if (options.socket == null) {
+			return usage(context, "-S socket option is mandatory");
+		}
+		return EXIT_CONTINUE;
+	}
+
+	@Override
+	protected Map<String, String> configOptionsDescription(CommandContext context)
+	{
+		return ImmutableMap.of(
+			"-S socket", "Unix domain socket to listen on"
+		);
+	}
+
+	@Override
+	public int execute() throws Exception
+	{
+		Path socket = Paths.get(options.socket).toAbsolutePath();
+		Files.deleteIfExists(socket);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		Closeable shared = tableUpdatorFactory.shareTables();
+		try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(socket));
+			socket.toFile().deleteOnExit();
+			try {
+				Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+			}
+			catch (UnsupportedOperationException ex) {
+				// not POSIX file system, rely on directory permissions
+			}
+			log.info("Listening on socket: {}", socket);
+			for (;;) {
+				SocketChannel client = server.accept();
+				executor.execute(() -> serve(client));
+			}
+		}
+		finally {
+			executor.shutdownNow();
+			shared.close();
+			Files.deleteIfExists(socket);
+		}
+	}
+
+	private void serve(SocketChannel client)
+	{
+		try (client) {
+			DataInputStream input = new DataInputStream(Channels.newInputStream(client));
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+			DaemonProtocol.Request request = DaemonProtocol.readRequest(input);
+			int exit;
+			if (!isDaemonDirectory(Paths.get(request.cwd()))) {
+				exit = rejectDirectory(request, output);
+			}
+			else {
+				synchronized (this) {
+					exit = runRedirected(request.args(), output);
+				}
+			}
+			DaemonProtocol.writeExit(output, exit);
+		}
+		catch (Exception ex) {
+			log.error("Failed to serve daemon client", ex);
+		}
+	}
+
+	private int runRedirected(List<String> args, DataOutputStream output)
+	{
+		Stopwatch watch = Stopwatch.createStarted();
+		log.info("Running: {}", args);
+		PrintStream oldOut = System.out;
+		PrintStream oldErr = System.err;
+		InputStream oldIn = System.in;
+		int exit;
+		try (
+			PrintStream stdout = new PrintStream(new BufferedOutputStream(new DaemonProtocol.FrameOutputStream(output, DaemonProtocol.FRAME_STDOUT)), true, StandardCharsets.UTF_8);
+			PrintStream stderr = new PrintStream(new BufferedOutputStream(new DaemonProtocol.FrameOutputStream(output, DaemonProtocol.FRAME_STDERR)), true, StandardCharsets.UTF_8)
+		) {
+			System.setOut(stdout);
+			System.setErr(stderr);
+			System.setIn(new ByteArrayInputStream(new byte[0]));
+			try {
+				exit = ZbynekLegalFormat.runCommand(context, args);
+			}
+			catch (Exception ex) {
+				ex.printStackTrace();
+				exit = EXIT_FAILURE;
+			}
+		}
+		finally {
+			System.setOut(oldOut);
+			System.setErr(oldErr);
+			System.setIn(oldIn);
+		}
+		log.info("Finished with exit code {} in {} ms", exit, watch.elapsed(TimeUnit.MILLISECONDS));
+		return exit;
+	}
+
+	private int rejectDirectory(DaemonProtocol.Request request, DataOutputStream output)
+	{
+		Path daemonDirectory = Paths.get("").toAbsolutePath();
+		log.warn("Rejecting request from other directory: client={} daemon={} args={}", request.cwd(), daemonDirectory, request.args());
+		try (PrintStream stderr = new PrintStream(new BufferedOutputStream(new DaemonProtocol.FrameOutputStream(output, DaemonProtocol.FRAME_STDERR)), true, StandardCharsets.UTF_8)) {
+			stderr.println("Daemon runs in directory " + daemonDirectory + ", client in " + request.cwd() +
+				", run the client in the daemon directory or start daemon in the client directory");
+		}
+		return EXIT_USAGE;
+	}
+
+	/**
+	 * Checks whether the client directory is the daemon working directory, as the commands resolve all relative paths
+	 * against it.
+	 */
+	static boolean isDaemonDirectory(Path cwd)
+	{
+		try {
+			return Files.isSameFile(cwd, Paths.get("").toAbsolutePath());
+		}
+		catch (IOException ex) {
+			return false;
+		}
+	}
+
+	public static class Options
+	{
+		String socket;
+	}
+}
@@ -6,6 +6,7 @@ import com.github.kvr000.zbyneklegal.format.file.FileDb;
 import com.github.kvr000.zbyneklegal.format.indexfile.IndexReader;
 import com.github.kvr000.zbyneklegal.format.pdf.PdfFiles;
 import com.github.kvr000.zbyneklegal.format.pdf.PdfRenderer;
+import com.github.kvr000.zbyneklegal.format.pdf.StampedExhibitCache;
 import com.github.kvr000.zbyneklegal.format.table.TableUpdator;
 import com.github.kvr000.zbyneklegal.format.table.TableUpdatorFactory;
 import com.github.kvr000.zbyneklegal.format.table.TsvUtil;
@@ -17,6 +18,9 @@ import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.extern.log4j.Log4j2;
+import net.dryuf.base.concurrent.executor.CloseableExecutor;
+import net.dryuf.base.concurrent.executor.ClosingExecutor;
+import net.dryuf.base.concurrent.future.FutureUtil;
 import net.dryuf.cmdline.command.AbstractCommand;
 import net.dryuf.cmdline.command.CommandContext;
 import org.apache.commons.text.StringSubstitutor;
@@ -25,7 +29,6 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
 
 import javax.inject.Inject;
@@ -34,13 +37,17 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -69,6 +76,14 @@ public class DocIndexCommand extends AbstractCommand
 	private Options options = new Options();
 
 	protected boolean parseOption(CommandContext context, String arg, ListIterator<String> args) throws Exception {
+		switch (arg) {
+		case "-j":
+			options.jobs = Integer.parseInt(needArgsParam(options.jobs, args));
+			if (options.jobs < 1) {
+				throw new IllegalArgumentException("-j jobs must be positive");
+			}
+			return true;
+		}
 		return super.parseOption(context, arg, args);
 	}
 
@@ -76,6 +91,7 @@ public class DocIndexCommand extends AbstractCommand
 	protected Map<String, String> configOptionsDescription(CommandContext context)
 	{
 		return ImmutableMap.<String, String>builder()
+			.put("-j jobs", "number of categories processed in parallel (default number of CPUs)")
 			.build();
 	}
 
@@ -95,6 +111,9 @@ public class DocIndexCommand extends AbstractCommand
 		if (mainOptions.getListFileKeys().size() != 1) {
 			return usage(context, "one list file key must be provided");
 		}
+		if (options.jobs == null) {
+			options.jobs = Runtime.getRuntime().availableProcessors();
+		}
 		return EXIT_CONTINUE;
 	}
 
@@ -122,6 +141,10 @@ public class DocIndexCommand extends AbstractCommand
 
 		Files.createDirectories(Paths.get(mainOptions.getOutput()));
 
+		if (mainOptions.getStampCache() != null) {
+			stampCache = new StampedExhibitCache(pdfFiles, Paths.get(mainOptions.getStampCache()));
+		}
+
 		for (InputEntry file: files.values()) {
 			final Category category = categoryMap.get(file.category);
 			if (category == null) {
@@ -134,39 +157,27 @@ public class DocIndexCommand extends AbstractCommand
 			if (filesIndex.getOptionalConfig("NEEDURL", "Name").map(Integer::parseInt).filter(v -> v == 0).isEmpty() && file.url == null) {
 				continue;
 			}
-			try (PDDocument input = pdfFiles.load(findPdfFile(file.filename))) {
-				if (category.output == null) {
-					category.output = new PDDocument();
-					category.merger = new PDFMergerUtility();
-					category.renderer = new PdfRenderer(category.output);
+			category.files.add(file);
+		}
+
+		try (CloseableExecutor executor = new ClosingExecutor(Executors.newFixedThreadPool(options.jobs))) {
+			Map<String, CompletableFuture<Void>> results = new LinkedHashMap<>();
+			for (Category category: categoryMap.values()) {
+				if (!category.files.isEmpty()) {
+					results.put(category.code, executor.submit(() -> {
+						processCategory(category);
+						return null;
+					}));
 				}
-				file.categoryPage0 = category.categoryPages;
-				category.merger.appendDocument(category.output, input);
-				if (input.getNumberOfPages() % 2 == 1) {
-					category.output.addPage(new PDPage(input.getPage(0).getMediaBox()));
+			}
+			for (Map.Entry<String, CompletableFuture<Void>> result: results.entrySet()) {
+				try {
+					FutureUtil.sneakyGet(result.getValue());
 				}
-				file.exhibitId = generateExhibitId(category);
-				file.categoryId = category.tab + "-" + file.exhibitId;
-				file.pageCount = category.output.getNumberOfPages() - file.categoryPage0;
-				category.renderer.rotatePagesPortrait(category.categoryPages, category.output.getNumberOfPages());
-				for (int i = category.categoryPages; i < category.output.getNumberOfPages(); ++i) {
-					PDPage page = category.output.getPage(i);
-					try (PDPageContentStream contentStream = new PDPageContentStream(category.output, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
-						if (i == category.categoryPages) {
-							renderExhibitId(category.renderer, contentStream, page, file);
-						}
-						category.renderer.renderPageNumber(contentStream, page,
-							/*StringFormat.escapePercent(category.code) +*/ " %03d", i + 1);
-					}
+				catch (Exception ex) {
+					log.error("Failed to process category: {}", result.getKey(), ex);
+					throw ex;
 				}
-				category.categoryPages = category.output.getNumberOfPages();
-				category.entries.put(file.categoryPage0, file);
-			}
-		}
-
-		for (Category category: categoryMap.values()) {
-			if (category.output != null) {
-				category.output.save(Paths.get(mainOptions.getOutput()).resolve(category.tab +"-" + category.code+".pdf").toFile());
 			}
 		}
 		errors.forEach((file, message) -> log.error(message));
@@ -189,6 +200,78 @@ public class DocIndexCommand extends AbstractCommand
 		return EXIT_SUCCESS;
 	}
 
+	/**
+	 * Builds and saves output of single category.  Categories are independent, so this runs in parallel and releases
+	 * the document as soon as it is written.
+	 */
+	private void processCategory(Category category) throws IOException
+	{
+		try (PDDocument output = pdfFiles.createDocument()) {
+			PDFMergerUtility merger = new PDFMergerUtility();
+			for (InputEntry file: category.files) {
+				file.categoryPage0 = category.categoryPages;
+				file.exhibitId = generateExhibitId(category);
+				file.categoryId = category.tab + "-" + file.exhibitId;
+				try (PDDocument input = loadStampedExhibit(findPdfFile(file.filename), file)) {
+					merger.appendDocument(output, input);
+				}
+				category.categoryPages = output.getNumberOfPages();
+				category.entries.put(file.categoryPage0, file);
+			}
+			output.save(Paths.get(mainOptions.getOutput()).resolve(category.tab +"-" + category.code+".pdf").toFile());
+		}
+		log.info("Category completed: code={} exhibits={} pages={}", category.code, category.exhibitCount, category.categoryPages);
+	}
+
+	/**
+	 * Loads the exhibit, pads it to even number of pages and stamps it, going through stamp cache if enabled.
+	 */
+	private PDDocument loadStampedExhibit(Path path, InputEntry file) throws IOException
+	{
+		if (stampCache == null) {
+			PDDocument input = pdfFiles.load(path);
+			try {
+				file.pageCount = input.getNumberOfPages() + input.getNumberOfPages() % 2;
+				stampExhibit(input, file);
+				return input;
+			}
+			catch (Throwable ex) {
+				input.close();
+				throw ex;
+			}
+		}
+		int pages = pdfFiles.countPages(path);
+		file.pageCount = pages + pages % 2;
+		return stampCache.loadOrStamp(
+			path,
+			Arrays.asList(
+				file.category,
+				file.exhibitId,
+				file.categoryPage0,
+				file.pageCount,
+				Arrays.toString(file.swornPosition)
+			),
+			doc -> stampExhibit(doc, file)
+		);
+	}
+
+	private void stampExhibit(PDDocument input, InputEntry file) throws IOException
+	{
+		if (input.getNumberOfPages() % 2 == 1) {
+			input.addPage(new PDPage(input.getPage(0).getMediaBox()));
+		}
+		try (PdfRenderer renderer = new PdfRenderer(input)) {
+			renderer.rotatePagesPortrait(0, input.getNumberOfPages());
+			renderer.stampPages(0, input.getNumberOfPages(), (i, page, contentStream) -> {
+				if (i == 0) {
+					renderExhibitId(renderer, contentStream, page, file);
+				}
+				renderer.renderPageNumber(contentStream, page,
+					/*StringFormat.escapePercent(category.code) +*/ " %03d", file.categoryPage0 + i + 1);
+			});
+		}
+	}
+
 	private String generateExhibitId(Category category)
 	{
 		int counter = category.exhibitCount++;
@@ -219,7 +302,7 @@ public class DocIndexCommand extends AbstractCommand
 		float pageWidth = renderer.rotatedWidth(page);
 		float pageHeight = renderer.rotatedHeight(page);
 
-		PDFont font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+		PDFont font = renderer.getStandardFont(Standard14Fonts.FontName.HELVETICA);
 		float fontSize = 12.0f * (pageHeight/792.0f);
 
 		float stringWidth = Stream.of(message.split("\n"))
@@ -365,6 +448,8 @@ public class DocIndexCommand extends AbstractCommand
 
 	private IndexReader indexReader;
 
+	private StampedExhibitCache stampCache;
+
 	private FileDb pdfFileDb = new DirTreeFileDb(Paths.get("."), ".pdf");
 
 	private Map<String, Category> categoryMap;
@@ -372,6 +457,8 @@ public class DocIndexCommand extends AbstractCommand
 	public static class Options
 	{
 		int align = 0;
+
+		Integer jobs;
 	}
 
 	@Builder
@@ -399,10 +486,9 @@ public class DocIndexCommand extends AbstractCommand
 		int exhibitCount;
 
 		@Builder.Default
-		TreeMap<Integer, InputEntry> entries = new TreeMap<>();
+		List<InputEntry> files = new ArrayList<>();
 
-		PDFMergerUtility merger;
-		PDDocument output;
-		PdfRenderer renderer;
+		@Builder.Default
+		TreeMap<Integer, InputEntry> entries = new TreeMap<>();
 	}
 }
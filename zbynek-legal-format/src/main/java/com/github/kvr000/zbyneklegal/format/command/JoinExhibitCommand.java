@@ -3,7 +3,9 @@ package com.github.kvr000.zbyneklegal.format.command;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
 import com.github.kvr000.zbyneklegal.format.indexfile.IndexReader;
+import com.github.kvr000.zbyneklegal.format.pdf.PdfFiles;
 import com.github.kvr000.zbyneklegal.format.pdf.PdfRenderer;
+import com.github.kvr000.zbyneklegal.format.pdf.StampedExhibitCache;
 import com.github.kvr000.zbyneklegal.format.table.TableUpdator;
 import com.github.kvr000.zbyneklegal.format.table.TableUpdatorFactory;
 import com.google.common.base.Preconditions;
@@ -11,30 +13,38 @@ import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import net.dryuf.base.concurrent.executor.CapacityResultSequencingExecutor;
+import net.dryuf.base.concurrent.executor.CloseableExecutor;
+import net.dryuf.base.concurrent.executor.ClosingExecutor;
+import net.dryuf.base.concurrent.future.FutureUtil;
 import net.dryuf.base.function.ThrowingBiConsumer;
 import net.dryuf.base.function.ThrowingRunnable;
 import net.dryuf.cmdline.command.AbstractCommand;
 import net.dryuf.cmdline.command.CommandContext;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.text.StringSubstitutor;
 import org.apache.commons.text.lookup.StringLookup;
-import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.PDPageTree;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
 import org.apache.pdfbox.pdmodel.interactive.action.PDAction;
 import org.apache.pdfbox.pdmodel.interactive.action.PDActionGoTo;
 import org.apache.pdfbox.pdmodel.interactive.action.PDActionURI;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageDestination;
 import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageFitDestination;
 
 import javax.inject.Inject;
@@ -42,10 +52,13 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
@@ -53,9 +66,13 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -104,6 +121,8 @@ public class JoinExhibitCommand extends AbstractCommand
 
 	private final TableUpdatorFactory tableUpdatorFactory;
 
+	private final PdfFiles pdfFiles;
+
 	private final ZbynekLegalFormat.Options mainOptions;
 
 	private Options options = new Options();
@@ -188,6 +207,17 @@ public class JoinExhibitCommand extends AbstractCommand
 		case "-i":
 			options.ignoreMissing = true;
 			return true;
+
+		case "--incremental":
+			options.incremental = true;
+			return true;
+
+		case "-j":
+			options.jobs = Integer.parseInt(needArgsParam(options.jobs == 1 ? null : options.jobs, args));
+			if (options.jobs < 1) {
+				throw new IllegalArgumentException("-j jobs must be positive");
+			}
+			return true;
 		}
 		return super.parseOption(context, arg, args);
 	}
@@ -224,6 +254,9 @@ public class JoinExhibitCommand extends AbstractCommand
 		if (mainOptions.getListFileKeys().size() > 1) {
 			log.info("Multiple exhibit sets specified, only the first one will be considered for BASE purposes");
 		}
+		if (options.incremental && !options.extract.isEmpty()) {
+			return usage(context, "--incremental cannot be combined with --extract");
+		}
 		return EXIT_CONTINUE;
 	}
 
@@ -297,9 +330,22 @@ public class JoinExhibitCommand extends AbstractCommand
 
 		revalidateOptions();
 
-		try (PDDocument doc = options.base == null ? new PDDocument() : Loader.loadPDF(new File(options.base))) {
+		Path outputPath = Paths.get(mainOptions.getOutput());
+		JoinManifest manifest = null;
+		JoinManifest.JoinManifestBuilder newManifest = null;
+		if (options.incremental) {
+			newManifest = JoinManifest.builder()
+				.version(JoinManifest.CURRENT_VERSION)
+				.baseChecksum(options.base == null ? null : sha256(Paths.get(options.base)))
+				.firstPage(options.firstPage)
+				.firstExhibit(options.firstExhibit);
+			manifest = readManifest(outputPath, newManifest.build());
+		}
+
+		try (PDDocument doc = manifest != null ? pdfFiles.load(outputPath) :
+			options.base == null ? pdfFiles.createDocument() : pdfFiles.load(Paths.get(options.base))) {
 
-			basePages = doc.getNumberOfPages();
+			basePages = manifest != null ? manifest.basePages : doc.getNumberOfPages();
 			internalPageCounter = basePages;
 			if (options.firstPage == null) {
 				options.firstPage = 1;
@@ -316,11 +362,11 @@ public class JoinExhibitCommand extends AbstractCommand
 
 			exhibitCounter = options.firstExhibit;
 
+			List<InputEntry> inputs = new ArrayList<>();
 			for (Map.Entry<String, InputEntry> inputMapEntry: files.entrySet()) {
 				InputEntry inputEntry = inputMapEntry.getValue();
-				File inputFile;
 				try {
-					inputFile = findPdfFile(inputMapEntry.getKey());
+					inputEntry.file = findPdfFile(inputMapEntry.getKey());
 				} catch (FileNotFoundException ex) {
 					inputEntry.error = ex;
 					if (options.ignoreMissing) {
@@ -329,33 +375,47 @@ public class JoinExhibitCommand extends AbstractCommand
 					}
 					throw ex;
 				}
-				try (PDDocument input = Loader.loadPDF(inputFile); PdfRenderer renderer = new PdfRenderer(input)) {
-					PDPageTree allPages = input.getDocumentCatalog().getPages();
+				inputs.add(inputEntry);
+			}
 
-					inputEntry.internalPageNumber = internalPageCounter;
-					inputEntry.pageNumber = options.firstPage + internalPageCounter;
+			if (mainOptions.getStampCache() != null) {
+				stampCache = new StampedExhibitCache(pdfFiles, Paths.get(mainOptions.getStampCache()));
+			}
 
-					for (int i = 0; i < allPages.getCount(); i++) {
-						PDPage page = allPages.get(i);
-						if (renderer.rotatedWidth(page) > renderer.rotatedHeight(page)) {
-							page.setRotation(page.getRotation() + 90);
+			List<InputEntry> pending = inputs;
+			Map<PDPageDestination, Pair<String, Integer>> baseLinks = Collections.emptyMap();
+			if (manifest != null) {
+				baseLinks = collectBaseLinks(doc, manifest);
+				pending = updateIncrementally(doc, merger, manifest, inputs);
+			}
+
+			if (options.jobs <= 1) {
+				for (InputEntry inputEntry: pending) {
+					try {
+						if (stampCache == null) {
+							try (PDDocument input = pdfFiles.load(inputEntry.file.toPath())) {
+								assignExhibit(inputEntry, input.getNumberOfPages());
+								stampExhibit(input, inputEntry);
+								merger.appendDocument(doc, input);
+							}
 						}
-						inputEntry.width = renderer.rotatedWidth(page);
-						inputEntry.height = renderer.rotatedHeight(page);
-						try (PDPageContentStream contentStream = new PDPageContentStream(input, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
-							if (i == 0) {
-								renderExhibitId(renderer, contentStream, page, inputEntry);
+						else {
+							assignExhibit(inputEntry, pdfFiles.countPages(inputEntry.file.toPath()));
+							try (PDDocument input = loadStampedExhibit(inputEntry)) {
+								merger.appendDocument(doc, input);
 							}
-							renderer.renderPageNumber(contentStream, page, options.firstPage + internalPageCounter++);
 						}
 					}
-					merger.appendDocument(doc, input);
-				}
-				catch (Exception ex) {
-					log.error("Failed to process file: {}", inputFile, ex);
-					throw ex;
+					catch (Exception ex) {
+						log.error("Failed to process file: {}", inputEntry.file, ex);
+						throw ex;
+					}
 				}
 			}
+			else {
+				joinExhibitsParallel(doc, merger, pending);
+			}
+			retargetBaseLinks(doc, baseLinks, inputs);
 
 			Map<String, Integer> urlsPages = files.values().stream()
 					.filter(entry -> entry.url != null)
@@ -439,7 +499,14 @@ public class JoinExhibitCommand extends AbstractCommand
 				}
 			}
 
-			doc.save(mainOptions.getOutput());
+			if (options.incremental) {
+				// previous output may still be read lazily by doc
+				pdfFiles.saveViaTmp(doc, outputPath);
+				writeManifest(outputPath, newManifest, inputs);
+			}
+			else {
+				doc.save(mainOptions.getOutput());
+			}
 		}
 
 		if (mainOptions.getListFile() != null) {
@@ -627,6 +694,299 @@ public class JoinExhibitCommand extends AbstractCommand
 		readSubstitutesTable();
 	}
 
+	private void assignExhibit(InputEntry entry, int pageCount)
+	{
+		entry.pageCount = pageCount;
+		entry.internalPageNumber = internalPageCounter;
+		entry.pageNumber = options.firstPage + internalPageCounter;
+		if (pageCount > 0) {
+			entry.exhibitId = String.format("%c%c", exhibitCounter/26 + 'A', exhibitCounter%26 + 'A');
+			++exhibitCounter;
+		}
+		internalPageCounter += pageCount;
+	}
+
+	private void stampExhibit(PDDocument input, InputEntry entry) throws IOException
+	{
+		try (PdfRenderer renderer = new PdfRenderer(input)) {
+			renderer.stampPages(0, input.getNumberOfPages(), (i, page, contentStream) -> {
+				if (renderer.rotatedWidth(page) > renderer.rotatedHeight(page)) {
+					page.setRotation(page.getRotation() + 90);
+				}
+				entry.width = renderer.rotatedWidth(page);
+				entry.height = renderer.rotatedHeight(page);
+				if (i == 0) {
+					renderExhibitId(renderer, contentStream, page, entry);
+				}
+				renderer.renderPageNumber(contentStream, page, entry.pageNumber + i);
+			});
+		}
+	}
+
+	/**
+	 * Pipelined variant of stamping.  Page counts are read upfront so numbering is known, exhibits are then stamped
+	 * on worker pool and merged in original order, producing the same output as the sequential path.
+	 */
+	private void joinExhibitsParallel(PDDocument doc, PDFMergerUtility merger, List<InputEntry> inputs) throws Exception
+	{
+		List<CompletableFuture<Void>> merged = new ArrayList<>();
+		try (CloseableExecutor executor = new ClosingExecutor(Executors.newFixedThreadPool(options.jobs))) {
+			List<CompletableFuture<Integer>> pageCounts = inputs.stream()
+				.map(entry -> executor.submit(() -> pdfFiles.countPages(entry.file.toPath())))
+				.toList();
+			for (int i = 0; i < inputs.size(); ++i) {
+				try {
+					assignExhibit(inputs.get(i), FutureUtil.sneakyGet(pageCounts.get(i)));
+				}
+				catch (Exception ex) {
+					log.error("Failed to process file: {}", inputs.get(i).file, ex);
+					throw ex;
+				}
+			}
+
+			try (CapacityResultSequencingExecutor pipeline = new CapacityResultSequencingExecutor(Long.MAX_VALUE, options.jobs * 2L, (Executor) executor)) {
+				for (InputEntry entry: inputs) {
+					merged.add(pipeline.submit(
+						1,
+						() -> loadStampedExhibit(entry),
+						(PDDocument input) -> {
+							try (input) {
+								merger.appendDocument(doc, input);
+							}
+							return null;
+						}
+					));
+				}
+			}
+		}
+		for (int i = 0; i < inputs.size(); ++i) {
+			try {
+				FutureUtil.sneakyGet(merged.get(i));
+			}
+			catch (Exception ex) {
+				log.error("Failed to process file: {}", inputs.get(i).file, ex);
+				throw ex;
+			}
+		}
+	}
+
+	/**
+	 * Loads and stamps the exhibit, going through stamp cache if enabled.  Exhibit numbering must be already assigned.
+	 */
+	private PDDocument loadStampedExhibit(InputEntry entry) throws IOException
+	{
+		if (stampCache == null) {
+			PDDocument input = pdfFiles.load(entry.file.toPath());
+			try {
+				stampExhibit(input, entry);
+				return input;
+			}
+			catch (Throwable ex) {
+				input.close();
+				throw ex;
+			}
+		}
+		PDDocument input = stampCache.loadOrStamp(entry.file.toPath(), stampParameters(entry), doc -> stampExhibit(doc, entry));
+		try (PdfRenderer renderer = new PdfRenderer(input)) {
+			if (input.getNumberOfPages() > 0) {
+				PDPage last = input.getPage(input.getNumberOfPages() - 1);
+				entry.width = renderer.rotatedWidth(last);
+				entry.height = renderer.rotatedHeight(last);
+			}
+		}
+		return input;
+	}
+
+	private List<String> stampParameters(InputEntry entry)
+	{
+		return Arrays.asList(
+			entry.exhibitId,
+			Integer.toString(entry.pageNumber),
+			entry.exhibitId == null ? null : formatSwornText(entry),
+			Arrays.toString(entry.swornPosition)
+		);
+	}
+
+	/**
+	 * Keeps pages of leading exhibits with unchanged numbering from previous output, replacing those with changed
+	 * content in place, and removes all pages starting with the first exhibit whose numbering changed.
+	 *
+	 * @return
+	 * 	exhibits to be appended
+	 */
+	private List<InputEntry> updateIncrementally(PDDocument doc, PDFMergerUtility merger, JoinManifest manifest, List<InputEntry> inputs) throws IOException
+	{
+		int[] exhibitCounters = new int[inputs.size() + 1];
+		for (int i = 0; i < inputs.size(); ++i) {
+			exhibitCounters[i] = exhibitCounter;
+			assignExhibit(inputs.get(i), pdfFiles.countPages(inputs.get(i).file.toPath()));
+		}
+		exhibitCounters[inputs.size()] = exhibitCounter;
+
+		int kept = 0;
+		while (kept < inputs.size() && kept < manifest.entries.size() && manifest.entries.get(kept).isSameLayout(inputs.get(kept))) {
+			++kept;
+		}
+		int cut = kept < manifest.entries.size() ? manifest.entries.get(kept).internalPageNumber : doc.getNumberOfPages();
+		for (int page = doc.getNumberOfPages() - 1; page >= cut; --page) {
+			doc.removePage(page);
+		}
+
+		int replaced = 0;
+		for (int i = 0; i < kept; ++i) {
+			InputEntry entry = inputs.get(i);
+			JoinManifest.Entry previous = manifest.entries.get(i);
+			if (checksum(entry).equals(previous.checksum) && stampChecksum(entry).equals(previous.stamp)) {
+				entry.width = previous.width;
+				entry.height = previous.height;
+			}
+			else {
+				replaceExhibit(doc, merger, entry);
+				++replaced;
+			}
+		}
+		log.info("Incremental update: kept={} replaced={} appended={}", kept - replaced, replaced, inputs.size() - kept);
+
+		if (kept < inputs.size()) {
+			internalPageCounter = inputs.get(kept).internalPageNumber;
+		}
+		exhibitCounter = exhibitCounters[kept];
+		return inputs.subList(kept, inputs.size());
+	}
+
+	/**
+	 * Replaces pages of exhibit in place, appending them first so the objects get cloned into output.
+	 */
+	private void replaceExhibit(PDDocument doc, PDFMergerUtility merger, InputEntry entry) throws IOException
+	{
+		int appended = doc.getNumberOfPages();
+		try (PDDocument input = loadStampedExhibit(entry)) {
+			merger.appendDocument(doc, input);
+		}
+		PDPageTree pages = doc.getPages();
+		List<PDPage> replacements = new ArrayList<>();
+		for (int i = appended; i < doc.getNumberOfPages(); ++i) {
+			replacements.add(doc.getPage(i));
+		}
+		for (int i = 0; i < replacements.size(); ++i) {
+			PDPage old = doc.getPage(entry.internalPageNumber + i);
+			pages.remove(replacements.get(i));
+			pages.insertBefore(replacements.get(i), old);
+			pages.remove(old);
+		}
+	}
+
+	/**
+	 * Remembers exhibit and page offset for links from base pages, as target pages get replaced.
+	 */
+	private Map<PDPageDestination, Pair<String, Integer>> collectBaseLinks(PDDocument doc, JoinManifest manifest) throws IOException
+	{
+		Map<PDPageDestination, Pair<String, Integer>> links = new LinkedHashMap<>();
+		for (int i = 0; i < basePages; ++i) {
+			for (PDAnnotation annotation: doc.getPage(i).getAnnotations()) {
+				if (annotation instanceof PDAnnotationLink link
+					&& link.getAction() instanceof PDActionGoTo goTo
+					&& goTo.getDestination() instanceof PDPageDestination destination
+					&& destination.getPage() != null)
+				{
+					int target = doc.getPages().indexOf(destination.getPage());
+					manifest.entries.stream()
+						.filter(e -> target >= e.internalPageNumber && target < e.internalPageNumber + e.pageCount)
+						.findFirst()
+						.ifPresent(e -> links.put(destination, Pair.of(e.filename, target - e.internalPageNumber)));
+				}
+			}
+		}
+		return links;
+	}
+
+	private void retargetBaseLinks(PDDocument doc, Map<PDPageDestination, Pair<String, Integer>> links, List<InputEntry> inputs)
+	{
+		Map<String, InputEntry> byName = inputs.stream()
+			.collect(Collectors.toMap(e -> e.filename, Function.identity()));
+		links.forEach((destination, target) -> {
+			InputEntry entry = byName.get(target.getLeft());
+			if (entry == null || target.getRight() >= entry.pageCount) {
+				log.warn("Link target not found in output anymore: file={} page={}", target.getLeft(), target.getRight());
+				return;
+			}
+			destination.setPage(doc.getPage(entry.internalPageNumber + target.getRight()));
+		});
+	}
+
+	private JoinManifest readManifest(Path output, JoinManifest current) throws IOException
+	{
+		Path path = manifestPath(output);
+		if (!Files.exists(path) || !Files.exists(output)) {
+			log.info("Previous manifest not found, building full output: {}", path);
+			return null;
+		}
+		JoinManifest manifest = jsonMapper.readValue(path.toFile(), JoinManifest.class);
+		if (manifest.version != current.version
+			|| !Objects.equals(manifest.baseChecksum, current.baseChecksum)
+			|| !Objects.equals(manifest.firstPage, current.firstPage)
+			|| !Objects.equals(manifest.firstExhibit, current.firstExhibit))
+		{
+			log.info("Base document or numbering options changed, building full output");
+			return null;
+		}
+		if (!sha256(output).equals(manifest.outputChecksum)) {
+			log.info("Output modified since previous run, building full output");
+			return null;
+		}
+		return manifest;
+	}
+
+	private void writeManifest(Path output, JoinManifest.JoinManifestBuilder manifest, List<InputEntry> inputs) throws IOException
+	{
+		List<JoinManifest.Entry> entries = new ArrayList<>();
+		for (InputEntry entry: inputs) {
+			entries.add(JoinManifest.Entry.builder()
+				.filename(entry.filename)
+				.checksum(checksum(entry))
+				.stamp(stampChecksum(entry))
+				.exhibitId(entry.exhibitId)
+				.pageNumber(entry.pageNumber)
+				.internalPageNumber(entry.internalPageNumber)
+				.pageCount(entry.pageCount)
+				.width(entry.width)
+				.height(entry.height)
+				.build()
+			);
+		}
+		jsonMapper.writerWithDefaultPrettyPrinter().writeValue(manifestPath(output).toFile(), manifest
+			.basePages(basePages)
+			.outputChecksum(sha256(output))
+			.entries(entries)
+			.build()
+		);
+	}
+
+	private static Path manifestPath(Path output)
+	{
+		return output.resolveSibling(output.getFileName() + ".manifest.json");
+	}
+
+	private String checksum(InputEntry entry) throws IOException
+	{
+		if (entry.checksum == null) {
+			entry.checksum = sha256(entry.file.toPath());
+		}
+		return entry.checksum;
+	}
+
+	private String stampChecksum(InputEntry entry)
+	{
+		return StampedExhibitCache.parametersChecksum(stampParameters(entry));
+	}
+
+	private static String sha256(Path file) throws IOException
+	{
+		try (InputStream stream = Files.newInputStream(file)) {
+			return DigestUtils.sha256Hex(stream);
+		}
+	}
+
 	private File findPdfFile(String name) throws IOException
 	{
 		File out;
@@ -639,10 +999,9 @@ public class JoinExhibitCommand extends AbstractCommand
 		throw new FileNotFoundException("File not found: " + name);
 	}
 
-	private void renderExhibitId(PdfRenderer renderer, PDPageContentStream contentStream, PDPage page, InputEntry entry) throws IOException
+	private String formatSwornText(InputEntry entry)
 	{
-		entry.exhibitId = String.format("%c%c", exhibitCounter/26 + 'A', exhibitCounter%26 + 'A');
-		String message = StringSubstitutor.replace(
+		return StringSubstitutor.replace(
 				options.swornText,
 				ImmutableMap.<String, String>builder()
 						.putAll(options.substitutes)
@@ -651,14 +1010,17 @@ public class JoinExhibitCommand extends AbstractCommand
 				"{",
 				"}"
 		);
+	}
 
-		++exhibitCounter;
+	private void renderExhibitId(PdfRenderer renderer, PDPageContentStream contentStream, PDPage page, InputEntry entry) throws IOException
+	{
+		String message = formatSwornText(entry);
 
 		boolean rotate = renderer.isRotated(page);
 		float pageWidth = renderer.rotatedWidth(page);
 		float pageHeight = renderer.rotatedHeight(page);
 
-		PDFont font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+		PDFont font = renderer.getStandardFont(Standard14Fonts.FontName.HELVETICA);
 		float fontSize = 12.0f * (pageHeight/792.0f);
 
 		float stringWidth = Stream.of(message.split("\n"))
@@ -683,7 +1045,7 @@ public class JoinExhibitCommand extends AbstractCommand
 			yPosition = rotate ? (10) : (pageHeight - stringHeight - 10);
 		}
 		log.info("Exhibit: page={} sw={} sh={} width={} height={} x={} y={}\n",
-				options.firstExhibit + internalPageCounter - 1,
+				entry.pageNumber,
 				stringWidth, stringHeight,
 				pageWidth, pageHeight,
 				xPosition, yPosition
@@ -746,6 +1108,8 @@ public class JoinExhibitCommand extends AbstractCommand
 				.put("--tn", "do not read substituted values from Text sheet from index file")
 				.put("--extract what (multi)", "extracts only subset of pages, possible values: first (first page) last (last page) exhibit-first (exhibit first pages) single (single page) pair-even (odd-even pair)")
 				.put("-i", "ignore errors, such as file not found")
+				.put("-j jobs", "number of exhibits stamped in parallel (default 1)")
+				.put("--incremental", "update previous output, restamping only changed exhibits, state is kept in output.manifest.json")
 				.build();
 	}
 
@@ -760,6 +1124,8 @@ public class JoinExhibitCommand extends AbstractCommand
 
 	private IndexReader indexReader;
 
+	private StampedExhibitCache stampCache;
+
 	private int basePages = -1;
 
 	private int internalPageCounter;
@@ -784,6 +1150,10 @@ public class JoinExhibitCommand extends AbstractCommand
 
 		private boolean ignoreMissing = false;
 
+		private int jobs = 1;
+
+		private boolean incremental = false;
+
 		private final Map<String, String> substitutes = new LinkedHashMap<>();
 
 		private ThrowingRunnable<IOException> substituteSource;
@@ -800,9 +1170,58 @@ public class JoinExhibitCommand extends AbstractCommand
 		int internalPageNumber = -1;
 		String exhibitId;
 		String url;
+		File file;
+		int pageCount;
+		String checksum;
 
 		float width, height;
 
 		Exception error;
 	}
+
+	/**
+	 * State of previous output, used by incremental update.
+	 */
+	@Builder
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	static class JoinManifest
+	{
+		/** Increase when the format or checksums change, so older manifests are not trusted. */
+		static final int CURRENT_VERSION = 2;
+
+		int version;
+		String outputChecksum;
+		String baseChecksum;
+		Integer firstPage;
+		Integer firstExhibit;
+		int basePages;
+		List<Entry> entries;
+
+		@Builder
+		@Data
+		@NoArgsConstructor
+		@AllArgsConstructor
+		static class Entry
+		{
+			String filename;
+			String checksum;
+			String stamp;
+			String exhibitId;
+			int pageNumber;
+			int internalPageNumber;
+			int pageCount;
+			float width, height;
+
+			boolean isSameLayout(InputEntry entry)
+			{
+				return filename.equals(entry.filename)
+					&& Objects.equals(exhibitId, entry.exhibitId)
+					&& pageNumber == entry.pageNumber
+					&& internalPageNumber == entry.internalPageNumber
+					&& pageCount == entry.pageCount;
+			}
+		}
+	}
 }
@@ -3,6 +3,8 @@ package com.github.kvr000.zbyneklegal.format.command;
 import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
 import com.github.kvr000.zbyneklegal.format.collection.CloseableIterator;
 import com.github.kvr000.zbyneklegal.format.image.ColorExtractor;
+import com.github.kvr000.zbyneklegal.format.pdf.PdfFiles;
+import com.github.kvr000.zbyneklegal.format.pdf.PdfPageScanner;
 import com.github.kvr000.zbyneklegal.format.pdf.PdfRenderer;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
@@ -11,7 +13,6 @@ import net.dryuf.base.function.ThrowingFunction;
 import net.dryuf.cmdline.command.AbstractCommand;
 import net.dryuf.cmdline.command.CommandContext;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
@@ -24,9 +25,7 @@ import javax.imageio.ImageIO;
 import javax.inject.Inject;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Iterator;
 import java.util.ListIterator;
@@ -42,6 +41,10 @@ public class MergeInkCommand extends AbstractCommand
 
 	private final ColorExtractor colorExtractor;
 
+	private final PdfFiles pdfFiles;
+
+	private final PdfPageScanner pageScanner;
+
 	private final byte[] lowBlueScalar;
 
 	private final byte[] highBlueScalar;
@@ -49,9 +52,11 @@ public class MergeInkCommand extends AbstractCommand
 	private Options options = new Options();
 
 	@Inject
-	public MergeInkCommand(ColorExtractor colorExtractor, ZbynekLegalFormat.Options mainOptions)
+	public MergeInkCommand(ColorExtractor colorExtractor, PdfFiles pdfFiles, PdfPageScanner pageScanner, ZbynekLegalFormat.Options mainOptions)
 	{
 		this.colorExtractor = colorExtractor;
+		this.pdfFiles = pdfFiles;
+		this.pageScanner = pageScanner;
 		this.mainOptions = mainOptions;
 
 		lowBlueScalar = colorExtractor.hsvToBytes(140, 0.15f, 0.15f);
@@ -102,18 +107,18 @@ public class MergeInkCommand extends AbstractCommand
 		Stopwatch watch = Stopwatch.createStarted();
 
 		try (
-			PDDocument doc = Loader.loadPDF(new File(options.baseFile));
+			PDDocument doc = pdfFiles.load(Paths.get(options.baseFile));
 			PdfRenderer renderer = new PdfRenderer(doc);
-			PDDocument inkFile = Loader.loadPDF(new File(options.inkFile));
-			CloseableIterator<Path> images = renderer.renderImages(Paths.get(options.inkFile), "png", null, 0.5f);
+			PDDocument inkFile = pdfFiles.load(Paths.get(options.inkFile));
+			CloseableIterator<byte[]> images = renderer.renderImages(pdfFiles, Paths.get(options.inkFile), pageScanner.scanPages(Paths.get(options.inkFile)), "png", null, 0.5f);
 		) {
 			for (int i = 0; i < inkFile.getNumberOfPages(); ++i) {
-				Path imagePath = images.next();
+				byte[] image = images.next();
 				int pageI = i;
 				PDPage docPage = doc.getPage(pageI);
 				PDRectangle box = docPage.getMediaBox();
 				Pair<byte[], Matrix> result = ((Callable<Pair<byte[], Matrix>>) () -> {
-					byte[] extracted = colorExtractor.extractColor(Files.readAllBytes(imagePath), lowBlueScalar, highBlueScalar);
+					byte[] extracted = colorExtractor.extractColor(image, lowBlueScalar, highBlueScalar);
 					Matrix transformation;
 					if (renderer.isRotated(docPage)) {
 						if (pageI < options.flipTill) {
@@ -9,7 +9,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import net.dryuf.cmdline.command.AbstractCommand;
 import net.dryuf.cmdline.command.CommandContext;
-import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDocument;
 import org.apache.pdfbox.cos.COSName;
@@ -19,7 +18,6 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.common.PDStream;
 
 import javax.inject.Inject;
-import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Paths;
@@ -65,7 +63,7 @@ public class PdfDecompressCommand extends AbstractCommand
 	{
 		Stopwatch watch = Stopwatch.createStarted();
 
-		try (PDDocument doc = Loader.loadPDF(new File(options.inputs.get(0)))) {
+		try (PDDocument doc = pdfFiles.load(Paths.get(options.inputs.get(0)))) {
 			pdfFiles.decompress(doc);
 			pdfFiles.saveViaTmp(doc, Paths.get(mainOptions.getOutput()));
 		}
@@ -38,7 +38,7 @@ public class PdfEmptyCommand extends AbstractCommand
 	{
 		Stopwatch watch = Stopwatch.createStarted();
 
-		try (PDDocument doc = new PDDocument()) {
+		try (PDDocument doc = pdfFiles.createDocument()) {
 			pdfFiles.saveViaTmp(doc, Paths.get(mainOptions.getOutput()));
 		}
 
@@ -3,6 +3,7 @@ package com.github.kvr000.zbyneklegal.format.command;
 import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
 import com.github.kvr000.zbyneklegal.format.pdf.PdfFiles;
 import com.github.kvr000.zbyneklegal.format.pdf.PdfRenderer;
+import com.github.kvr000.zbyneklegal.format.pdf.StreamingPdfWriter;
 import com.github.kvr000.zbyneklegal.format.table.TsvUtil;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
@@ -18,7 +19,11 @@ import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 
 import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
@@ -44,6 +49,10 @@ public class PdfJoinCommand extends AbstractCommand
 				options.decompress = true;
 				return true;
 			}
+			case "--stream" -> {
+				options.stream = true;
+				return true;
+			}
 			case "--append" -> {
 				options.append = true;
 				return true;
@@ -110,8 +119,26 @@ public class PdfJoinCommand extends AbstractCommand
 		Stopwatch watch = Stopwatch.createStarted();
 
 		Map<String, Pair<Integer, Integer>> inputs = new LinkedHashMap<>();
+		if (options.stream) {
+			joinStreaming(inputs);
+		}
+		else {
+			joinInMemory(inputs);
+		}
+
+		log.info("Processed in {} ms", watch.elapsed(TimeUnit.MILLISECONDS));
+
+		inputs.forEach((file, range) -> {
+			System.out.println(TsvUtil.formatTsv(file, range.getLeft() + 1, range.getRight()));
+		});
+
+		return EXIT_SUCCESS;
+	}
+
+	private void joinInMemory(Map<String, Pair<Integer, Integer>> inputs) throws IOException
+	{
 		try (
-			PDDocument doc = options.append ? pdfFiles.load(Paths.get(mainOptions.getOutput())) : new PDDocument();
+			PDDocument doc = options.append ? pdfFiles.load(Paths.get(mainOptions.getOutput())) : pdfFiles.createDocument();
 			PdfRenderer renderer = new PdfRenderer(doc)
 		) {
 			int internalPageCounter = doc.getNumberOfPages();
@@ -130,7 +157,7 @@ public class PdfJoinCommand extends AbstractCommand
 								continue;
 							}
 							PDPage page = doc.getPage(internalPageCounter);
-							try (PDPageContentStream contentStream = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
+							try (PDPageContentStream contentStream = renderer.openOverlay(page)) {
 								renderer.renderPageNumberAt(contentStream, page, options.pagePosition, options.pagePattern, options.firstPage + internalPageCounter);
 							}
 						}
@@ -147,14 +174,59 @@ public class PdfJoinCommand extends AbstractCommand
 			}
 			pdfFiles.saveViaTmp(doc, Paths.get(mainOptions.getOutput()));
 		}
+	}
 
-		log.info("Processed in {} ms", watch.elapsed(TimeUnit.MILLISECONDS));
-
-		inputs.forEach((file, range) -> {
-			System.out.println(TsvUtil.formatTsv(file, range.getLeft() + 1, range.getRight()));
-		});
+	private void joinStreaming(Map<String, Pair<Integer, Integer>> inputs) throws IOException
+	{
+		Path output = Paths.get(mainOptions.getOutput());
+		Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+		try {
+			try (StreamingPdfWriter writer = new StreamingPdfWriter(Files.newOutputStream(tmp))) {
+				if (options.append) {
+					try (PDDocument base = pdfFiles.load(output)) {
+						writer.appendDocument(base);
+					}
+				}
+				int inputCounter = 0;
+				for (String inputName: options.inputs) {
+					try (PDDocument input = pdfFiles.load(Paths.get(inputName))) {
+						if (options.decompress) {
+							pdfFiles.decompress(input);
+						}
+						int start = writer.getNumberOfPages();
+						int pages = input.getNumberOfPages();
+						try (PdfRenderer renderer = new PdfRenderer(input)) {
+							if (options.firstPage != null && !(inputCounter == 0 && options.skipFirst)) {
+								renderPageNumbers(input, renderer, 0, start);
+							}
+							if (options.align > 1) {
+								while ((start + input.getNumberOfPages()) % options.align != 0) {
+									renderer.insertBlankPage(input.getNumberOfPages());
+								}
+								// same as in-memory join, alignment pages are numbered only when followed by another input
+								if (options.firstPage != null && inputCounter < options.inputs.size() - 1) {
+									renderPageNumbers(input, renderer, pages, start);
+								}
+							}
+						}
+						writer.appendDocument(input);
+						inputs.put(inputName, Pair.of(start, input.getNumberOfPages()));
+					}
+					++inputCounter;
+				}
+			}
+			Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
 
-		return EXIT_SUCCESS;
+	private void renderPageNumbers(PDDocument input, PdfRenderer renderer, int from, int offset) throws IOException
+	{
+		renderer.stampPages(from, input.getNumberOfPages(), (i, page, contentStream) ->
+			renderer.renderPageNumberAt(contentStream, page, options.pagePosition, options.pagePattern, options.firstPage + offset + from + i)
+		);
 	}
 
 	@Override
@@ -162,6 +234,7 @@ public class PdfJoinCommand extends AbstractCommand
 	{
 		return ImmutableMap.of(
 			"--decompress", "decompress input files",
+			"--stream", "write inputs to output one by one, keeping only single input in memory (pages only, no outlines or forms)",
 			"--append", "append to output",
 			"--skip-first", "do not modify first file (typically when appending)",
 			"-a start-page", "add page numbers, starting with this parameter value",
@@ -175,6 +248,8 @@ public class PdfJoinCommand extends AbstractCommand
 	{
 		boolean decompress;
 
+		boolean stream;
+
 		boolean append;
 
 		boolean skipFirst;
@@ -11,14 +11,12 @@ import lombok.extern.log4j.Log4j2;
 import net.dryuf.cmdline.command.AbstractCommand;
 import net.dryuf.cmdline.command.CommandContext;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 
 import javax.inject.Inject;
-import java.io.File;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -133,9 +131,9 @@ public class PdfReplaceCommand extends AbstractCommand
 	{
 		Stopwatch watch = Stopwatch.createStarted();
 
-		try (PDDocument doc = new PDDocument(); PdfRenderer renderer = new PdfRenderer(doc)) {
+		try (PDDocument doc = pdfFiles.createDocument(); PdfRenderer renderer = new PdfRenderer(doc)) {
 			PDFMergerUtility merger = new PDFMergerUtility();
-			try (PDDocument base = Loader.loadPDF(new File(mainOptions.getOutput()))) {
+			try (PDDocument base = pdfFiles.load(Paths.get(mainOptions.getOutput()))) {
 				merger.appendDocument(doc, base);
 				Map<String, String> meta = new LinkedHashMap<>();
 				if (!options.replaceMeta) {
@@ -143,7 +141,7 @@ public class PdfReplaceCommand extends AbstractCommand
 						meta.put(key, base.getDocumentInformation().getCustomMetadataValue(key)));
 				}
 				if (options.inputFile != null) {
-					try (DocumentWrapper input = new DocumentWrapper(new File(options.inputFile))) {
+					try (DocumentWrapper input = pdfFiles.openWrapper(Paths.get(options.inputFile))) {
 						List<PDPage> inputPages = renderer.cloneSourcePages(input);
 
 						for (Pair<Integer, Integer> operation : options.operations) {
@@ -180,7 +178,7 @@ public class PdfReplaceCommand extends AbstractCommand
 					doc.getDocumentInformation().setCustomMetadataValue(key, null);
 				}
 				if (options.metaFrom != null) {
-					try (PDDocument metaPdf = Loader.loadPDF(new File(options.metaFrom))) {
+					try (PDDocument metaPdf = pdfFiles.load(Paths.get(options.metaFrom))) {
 						for (String key: metaPdf.getDocumentInformation().getMetadataKeys()) {
 							meta.put(key, metaPdf.getDocumentInformation().getCustomMetadataValue(key));
 						}
@@ -3,6 +3,9 @@ package com.github.kvr000.zbyneklegal.format.command;
 import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
 import com.github.kvr000.zbyneklegal.format.collection.CloseableIterator;
 import com.github.kvr000.zbyneklegal.format.image.ColorExtractor;
+import com.github.kvr000.zbyneklegal.format.pdf.ImagePageAnalyzer;
+import com.github.kvr000.zbyneklegal.format.pdf.PdfFiles;
+import com.github.kvr000.zbyneklegal.format.pdf.PdfPageScanner;
 import com.github.kvr000.zbyneklegal.format.pdf.PdfRenderer;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
@@ -11,19 +14,25 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import net.dryuf.cmdline.command.AbstractCommand;
 import net.dryuf.cmdline.command.CommandContext;
-import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
 import javax.inject.Inject;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.BitSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -38,6 +47,15 @@ public class PdfResizeCommand extends AbstractCommand
 
 	private final ColorExtractor colorExtractor;
 
+	private final PdfFiles pdfFiles;
+
+	private final PdfPageScanner pageScanner;
+
+	private final ImagePageAnalyzer imagePageAnalyzer;
+
+	/** Ratio above target width up to which the image is copied unchanged. */
+	private static final float RESOLUTION_TOLERANCE = 1.05f;
+
 	private Options options = new Options();
 
 	protected boolean parseOption(CommandContext context, String arg, ListIterator<String> args) throws Exception {
@@ -94,7 +112,7 @@ public class PdfResizeCommand extends AbstractCommand
 	{
 		Stopwatch watch = Stopwatch.createStarted();
 
-		try (PDDocument output = new PDDocument()) {
+		try (PDDocument output = pdfFiles.createDocument()) {
 			for (String input : options.input) {
 				mergeResizedDocument(output, input);
 			}
@@ -108,31 +126,73 @@ public class PdfResizeCommand extends AbstractCommand
 	private void mergeResizedDocument(PDDocument doc, String inputName) throws IOException
 	{
 		try (
-			PDDocument input = Loader.loadPDF(new File(inputName));
-			PdfRenderer renderer = new PdfRenderer(input);
-			CloseableIterator<Path> images = renderer.renderImages(Paths.get(inputName), "jpeg", options.scale, options.quality)
+			PDDocument input = pdfFiles.load(Paths.get(inputName));
+			PdfRenderer renderer = new PdfRenderer(input)
 		) {
+			// pages which are just JPEG scan are copied or downsampled directly, only the rest gets rendered
+			PDImageXObject[] pageImages = new PDImageXObject[input.getNumberOfPages()];
+			BitSet renderedPages = new BitSet(pageImages.length);
+			for (int i = 0; i < pageImages.length; ++i) {
+				pageImages[i] = imagePageAnalyzer.findPageImage(input.getPage(i));
+				if (pageImages[i] == null) {
+					renderedPages.set(i);
+				}
+			}
+			log.info("Resizing file: file={} pages={} rendered={}", inputName, pageImages.length, renderedPages.cardinality());
+
 			if (doc.getDocumentInformation().getMetadataKeys().isEmpty()) {
 				for (String key: input.getDocumentInformation().getMetadataKeys()) {
 					doc.getDocumentInformation().setCustomMetadataValue(key, input.getDocumentInformation().getCustomMetadataValue(key));
 				}
 			}
-			for (int i = 0; images.hasNext(); ++i) {
-				PDPage inputPage = input.getPage(i);
-				PDRectangle mediaBox = inputPage.getMediaBox();
-				if (inputPage.getRotation() == 90 || inputPage.getRotation() == 270) {
-					mediaBox = new PDRectangle(mediaBox.getLowerLeftY(), mediaBox.getLowerLeftX(), mediaBox.getHeight(), mediaBox.getWidth());
+			try (CloseableIterator<byte[]> images = renderer.renderImages(pdfFiles, Paths.get(inputName), pageScanner.scanPages(Paths.get(inputName)), renderedPages, "jpeg", options.scale, options.quality)) {
+				for (int i = 0; i < pageImages.length; ++i) {
+					PDPage inputPage = input.getPage(i);
+					PDRectangle mediaBox = inputPage.getMediaBox();
+					if (inputPage.getRotation() == 90 || inputPage.getRotation() == 270) {
+						mediaBox = new PDRectangle(mediaBox.getLowerLeftY(), mediaBox.getLowerLeftX(), mediaBox.getHeight(), mediaBox.getWidth());
+					}
+					PDPage outputPage = new PDPage(mediaBox);
+
+					PDImageXObject ximage = pageImages[i] != null ?
+						resizePageImage(doc, pageImages[i], mediaBox) :
+						PDImageXObject.createFromByteArray(doc, images.next(), "page-" + i + ".jpeg");
+					try (PDPageContentStream contentStream = new PDPageContentStream(doc, outputPage)) {
+						contentStream.drawImage(ximage, mediaBox.getLowerLeftX(), mediaBox.getLowerLeftY(), mediaBox.getWidth(), mediaBox.getHeight());
+					}
+
+					doc.addPage(outputPage);
 				}
-				PDPage outputPage = new PDPage(mediaBox);
+			}
+		}
+	}
 
-				PDImageXObject ximage = PDImageXObject.createFromFile(images.next().toString(), doc);
-				try (PDPageContentStream contentStream = new PDPageContentStream(doc, outputPage)) {
-					contentStream.drawImage(ximage, mediaBox.getLowerLeftX(), mediaBox.getLowerLeftY(), mediaBox.getWidth(), mediaBox.getHeight());
+	/**
+	 * Copies encoded JPEG if it is not above the target resolution, otherwise decodes and downsamples only the image.
+	 */
+	private PDImageXObject resizePageImage(PDDocument doc, PDImageXObject image, PDRectangle mediaBox) throws IOException
+	{
+		int targetWidth = Math.round(mediaBox.getWidth() * PdfRenderer.IMAGE_SCALE * (options.scale == null ? 1.0f : options.scale.floatValue()));
+		if (image.getWidth() <= targetWidth * RESOLUTION_TOLERANCE) {
+			try (InputStream encoded = image.getCOSObject().createRawInputStream()) {
+				PDImageXObject copy = new PDImageXObject(doc, encoded, COSName.DCT_DECODE, image.getWidth(), image.getHeight(), image.getBitsPerComponent(), image.getColorSpace());
+				COSBase decodeParms = image.getCOSObject().getDictionaryObject(COSName.DECODE_PARMS);
+				if (decodeParms != null) {
+					copy.getCOSObject().setItem(COSName.DECODE_PARMS, decodeParms);
 				}
-
-				doc.addPage(outputPage);
+				return copy;
 			}
 		}
+		BufferedImage original = image.getImage();
+		int targetHeight = Math.max(1, Math.round((float) image.getHeight() * targetWidth / image.getWidth()));
+		BufferedImage resized = new BufferedImage(targetWidth, targetHeight,
+			image.getColorSpace().getNumberOfComponents() == 1 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = resized.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g.drawImage(original, 0, 0, targetWidth, targetHeight, null);
+		g.dispose();
+		return JPEGFactory.createFromImage(doc, resized, options.quality);
 	}
 
 	@Override
@@ -3,11 +3,12 @@ package com.github.kvr000.zbyneklegal.format.command;
 import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
 import com.github.kvr000.zbyneklegal.format.format.SizeFormat;
 import com.github.kvr000.zbyneklegal.format.pdf.DocumentWrapper;
+import com.github.kvr000.zbyneklegal.format.pdf.PdfFiles;
 import com.github.kvr000.zbyneklegal.format.pdf.PdfRenderer;
+import com.github.kvr000.zbyneklegal.format.pdf.PdfSizeEstimator;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.io.CountingOutputStream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import net.dryuf.base.lang.MultiCloseable;
@@ -19,9 +20,9 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 
 import javax.inject.Inject;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
@@ -35,6 +36,8 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor(onConstructor = @__(@Inject))
 public class PdfSplitCommand extends AbstractCommand
 {
+	private final PdfFiles pdfFiles;
+
 	private final ZbynekLegalFormat.Options mainOptions;
 
 	private final Options options = new Options();
@@ -95,54 +98,40 @@ public class PdfSplitCommand extends AbstractCommand
 		Stopwatch watch = Stopwatch.createStarted();
 
 		try (MultiCloseable<IOException> resources = new MultiCloseable<>()) {
-			TreeMap<Integer, DocumentWrapper> pageToFile = new TreeMap<>();
+			TreeMap<Integer, InputFile> pageToFile = new TreeMap<>();
 			int totalPages = 0;
 			for (String inputFile : options.inputs) {
-				DocumentWrapper input = new DocumentWrapper(new File(inputFile));
+				int pages = pdfFiles.countPages(Paths.get(inputFile));
+				InputFile input = new InputFile(new File(inputFile), totalPages, pages);
 				resources.add(input);
 				pageToFile.put(totalPages, input);
-				totalPages += input.getDocument().getNumberOfPages();
+				totalPages += pages;
 			}
+			int group = Math.min(options.pairing, options.maxPages);
 			int currentOutput = 0;
 			for (int currentStart = 0; currentStart < totalPages; ) {
-				PDFMergerUtility merger = new PDFMergerUtility();
-				int lowEnd = Math.min(currentStart + options.pairing, totalPages);
-				int highEnd = Math.min((currentStart + options.maxPages >= 0) ? (currentStart + options.maxPages) : Integer.MAX_VALUE, totalPages);
-
+				int end = planPartEnd(pageToFile, totalPages, currentStart, group);
+				String filename = FilenameUtils.removeExtension(mainOptions.getOutput()) + String.format("-%04d.", currentOutput) + FilenameUtils.getExtension(mainOptions.getOutput());
 				for (; ; ) {
-					int middle = ((lowEnd + highEnd) / 2) / options.pairing * options.pairing;
-					if (middle <= lowEnd) {
-						middle = highEnd;
+					try (PDDocument doc = buildPart(pageToFile, currentStart, end)) {
+						doc.save(new File(filename));
 					}
-					try (PDDocument doc = new PDDocument(); PdfRenderer renderer = new PdfRenderer(doc)) {
-						for (int i = currentStart; i < middle; ) {
-							Map.Entry<Integer, DocumentWrapper> entry = pageToFile.floorEntry(currentStart + i);
-							if (entry.getKey() - entry.getValue().getDocument().getNumberOfPages() == i && entry.getKey() < middle) {
-								merger.appendDocument(doc, entry.getValue().getFreshDocument());
-								i = entry.getKey();
-							} else {
-								List<PDPage> pages = renderer.cloneSourcePages(entry.getValue());
-								for (int end = Math.min(middle, pages.size() - entry.getKey()); i < end; ++i) {
-									PDPage page = pages.get(i - entry.getKey());
-									doc.addPage(page);
-								}
-							}
-						}
-
-						CountingOutputStream output = new CountingOutputStream(OutputStream.nullOutputStream());
-						doc.save(output);
-						if (output.getCount() > options.maxSize && middle - options.pairing > currentStart) {
-							highEnd = middle - options.pairing;
-						} else if (middle < highEnd && middle > lowEnd) {
-							lowEnd = middle;
-						} else {
-							String filename = FilenameUtils.removeExtension(mainOptions.getOutput()) + String.format("-%04d.", currentOutput) + FilenameUtils.getExtension(mainOptions.getOutput());
-							doc.save(new File(filename));
-							log.info("Saved output: file={} size={} pages={}", filename, Files.size(Paths.get(filename)), doc.getNumberOfPages());
-							++currentOutput;
-							currentStart = middle;
-							break;
-						}
+					long size = Files.size(Paths.get(filename));
+					if (size > options.maxSize && end - group > currentStart) {
+						// estimate was too optimistic, shrink proportionally and save again
+						int shrunk = currentStart + (int) ((end - currentStart) * ((double) options.maxSize / size)) / group * group;
+						log.info("Output exceeded estimate, shrinking: file={} size={} pages={} newPages={}", filename, size, end - currentStart, shrunk - currentStart);
+						end = Math.max(currentStart + group, Math.min(end - group, shrunk));
+						continue;
+					}
+					log.info("Saved output: file={} size={} pages={}", filename, size, end - currentStart);
+					break;
+				}
+				++currentOutput;
+				currentStart = end;
+				for (InputFile input: pageToFile.headMap(currentStart, true).values()) {
+					if (input.start + input.pages <= currentStart) {
+						input.close();
 					}
 				}
 			}
@@ -152,6 +141,58 @@ public class PdfSplitCommand extends AbstractCommand
 		return EXIT_SUCCESS;
 	}
 
+	private int planPartEnd(TreeMap<Integer, InputFile> pageToFile, int totalPages, int start, int group) throws IOException
+	{
+		PdfSizeEstimator estimator = new PdfSizeEstimator();
+		long size = PdfSizeEstimator.DOCUMENT_OVERHEAD;
+		int end = start;
+		while (end < totalPages) {
+			int groupEnd = Math.min(end + group, totalPages);
+			if (groupEnd - start > options.maxPages && end > start) {
+				break;
+			}
+			long groupSize = 0;
+			for (int i = end; i < groupEnd; ++i) {
+				InputFile input = pageToFile.floorEntry(i).getValue();
+				groupSize += estimator.addPage(input.open().getDocument().getPage(i - input.start));
+			}
+			if (size + groupSize > options.maxSize && end > start) {
+				break;
+			}
+			size += groupSize;
+			end = groupEnd;
+		}
+		log.debug("Planned part: start={} end={} estimatedSize={}", start, end, size);
+		return end;
+	}
+
+	private PDDocument buildPart(TreeMap<Integer, InputFile> pageToFile, int start, int end) throws IOException
+	{
+		PDFMergerUtility merger = new PDFMergerUtility();
+		PDDocument doc = pdfFiles.createDocument();
+		try (PdfRenderer renderer = new PdfRenderer(doc)) {
+			for (int i = start; i < end; ) {
+				InputFile input = pageToFile.floorEntry(i).getValue();
+				int fileEnd = input.start + input.pages;
+				if (input.start == i && fileEnd <= end) {
+					merger.appendDocument(doc, input.open().getFreshDocument());
+					i = fileEnd;
+				}
+				else {
+					List<PDPage> pages = renderer.cloneSourcePages(input.open());
+					for (int last = Math.min(end, fileEnd); i < last; ++i) {
+						doc.addPage(pages.get(i - input.start));
+					}
+				}
+			}
+			return doc;
+		}
+		catch (Throwable ex) {
+			doc.close();
+			throw ex;
+		}
+	}
+
 	@Override
 	protected Map<String, String> configOptionsDescription(CommandContext context)
 	{
@@ -179,4 +220,36 @@ public class PdfSplitCommand extends AbstractCommand
 
 		List<String> inputs;
 	}
+
+	/**
+	 * Input file, opened only while its pages are needed for planning or building current part.
+	 */
+	@RequiredArgsConstructor
+	class InputFile implements Closeable
+	{
+		final File file;
+
+		final int start;
+
+		final int pages;
+
+		DocumentWrapper wrapper;
+
+		DocumentWrapper open() throws IOException
+		{
+			if (wrapper == null) {
+				wrapper = pdfFiles.openWrapper(file.toPath());
+			}
+			return wrapper;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (wrapper != null) {
+				wrapper.close();
+				wrapper = null;
+			}
+		}
+	}
 }
@@ -1,7 +1,11 @@
 package com.github.kvr000.zbyneklegal.format.command;
 
 import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
+import com.github.kvr000.zbyneklegal.format.file.ChecksumCache;
+import com.github.kvr000.zbyneklegal.format.file.FileChecksums;
 import com.github.kvr000.zbyneklegal.format.indexfile.IndexReader;
+import com.github.kvr000.zbyneklegal.format.storage.DownloadScheduler;
+import com.github.kvr000.zbyneklegal.format.storage.MetadataBatch;
 import com.github.kvr000.zbyneklegal.format.storage.StorageRepository;
 import com.github.kvr000.zbyneklegal.format.table.TableUpdator;
 import com.github.kvr000.zbyneklegal.format.table.TableUpdatorFactory;
@@ -11,13 +15,11 @@ import lombok.Builder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import net.dryuf.base.concurrent.executor.CloseableExecutor;
-import net.dryuf.base.concurrent.executor.ClosingExecutor;
 import net.dryuf.base.concurrent.executor.CommonPoolExecutor;
 import net.dryuf.base.concurrent.future.FutureUtil;
 import net.dryuf.base.function.ThrowingFunction;
 import net.dryuf.cmdline.command.AbstractCommand;
 import net.dryuf.cmdline.command.CommandContext;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
@@ -26,15 +28,25 @@ import javax.inject.Inject;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 @Log4j2
@@ -47,19 +59,53 @@ public class SyncFilesCommand extends AbstractCommand
 		"xz", XZCompressorInputStream::new
 	);
 
+	private static final int DEFAULT_JOBS = 4;
+
+	private static final int DEFAULT_RETRIES = 3;
+
+	private static final Duration RETRY_BACKOFF = Duration.ofSeconds(1);
+
 	private final TableUpdatorFactory tableUpdatorFactory;
 
 	private final StorageRepository storageRepository;
 
+	private final FileChecksums fileChecksums;
+
 	private final ZbynekLegalFormat.Options mainOptions;
 
 	private Options options = new Options();
 
 	private TableUpdator filesIndex;
 
+	private ChecksumCache checksumCache;
+
 	protected boolean parseOption(CommandContext context, String arg, ListIterator<String> args) throws Exception
 	{
 		switch (arg) {
+		case "-j":
+			options.jobs = Integer.parseInt(needArgsParam(options.jobs == DEFAULT_JOBS ? null : options.jobs, args));
+			if (options.jobs < 1) {
+				throw new IllegalArgumentException("-j jobs must be positive");
+			}
+			return true;
+
+		case "--host-jobs":
+			options.hostJobs = Integer.parseInt(needArgsParam(options.hostJobs == DEFAULT_JOBS ? null : options.hostJobs, args));
+			if (options.hostJobs < 1) {
+				throw new IllegalArgumentException("--host-jobs jobs must be positive");
+			}
+			return true;
+
+		case "--retries":
+			options.retries = Integer.parseInt(needArgsParam(options.retries == DEFAULT_RETRIES ? null : options.retries, args));
+			if (options.retries < 0) {
+				throw new IllegalArgumentException("--retries count must not be negative");
+			}
+			return true;
+
+		case "--verify":
+			options.verify = true;
+			return true;
 		}
 		return super.parseOption(context, arg, args);
 	}
@@ -80,56 +126,65 @@ public class SyncFilesCommand extends AbstractCommand
 
 		Map<String, InputEntry> files;
 
-		filesIndex = tableUpdatorFactory.openTableUpdator(Paths.get(mainOptions.getListFile()), mainOptions.getListSheet(), "Name");
+		filesIndex = tableUpdatorFactory.openTableReader(Paths.get(mainOptions.getListFile()), mainOptions.getListSheet(), "Name");
 		files = readListFile();
 
+		List<String> urls = files.values().stream()
+				.flatMap(entry -> Stream.of(entry.filenameUrl, entry.medianameUrl))
+				.filter(Objects::nonNull)
+				.distinct()
+				.collect(Collectors.toList());
+		MetadataBatch metadata = storageRepository.metadata(urls);
+		log.info("Fetched metadata: files={} found={} failed={}", urls.size(), metadata.getMetadata().size(), metadata.getFailures().size());
+
 		AtomicInteger errors = new AtomicInteger();
-		try (
-				CloseableExecutor downloadExecutor = new ClosingExecutor(Executors.newSingleThreadExecutor());
-				CloseableExecutor executor = CommonPoolExecutor.getInstance()
-		) {
+		Queue<Download> downloads = new ConcurrentLinkedQueue<>();
+		checksumCache = ChecksumCache.open(Paths.get(mainOptions.getListFile()), fileChecksums, options.verify);
+		try (CloseableExecutor executor = CommonPoolExecutor.getInstance()) {
 			for (Map.Entry<String, InputEntry> inputMapEntry: files.entrySet()) {
 				InputEntry inputEntry = inputMapEntry.getValue();
 
-				FutureUtil.submitAsync(() -> {
-					if (inputEntry.filenameUrl == null) {
-						return null;
-					}
-					return inputEntry;
-				}, executor)
-						.thenApplyAsync((InputEntry entry) -> {
-							if (entry == null) {
-								return null;
-							}
-							try {
-								downloadPdf(inputEntry.filename + ".pdf", inputEntry.filenameUrl);
-							}
-							catch (Throwable ex) {
-								log.error("Failed to download file: {}", inputEntry.filename, ex);
-								errors.incrementAndGet();
-							}
-							return entry;
-						}, downloadExecutor);
+				if (inputEntry.filenameUrl != null) {
+					FutureUtil.submitAsync(() -> planPdf(inputEntry.filename + ".pdf", inputEntry.filenameUrl, metadata.get(inputEntry.filenameUrl)), executor)
+							.whenComplete((download, ex) -> {
+								if (ex != null) {
+									log.error("Failed to check file: {}", inputEntry.filename, ex);
+									errors.incrementAndGet();
+								}
+								else if (download != null) {
+									downloads.add(download);
+								}
+							});
+				}
 
-				FutureUtil.submitAsync(() -> {
-							if (inputEntry.medianameUrl == null) {
-								return null;
-							}
-							return inputEntry;
-						}, executor)
-						.thenApplyAsync((InputEntry entry) -> {
-							if (entry == null) {
-								return null;
-							}
-							try {
-								downloadFile(inputEntry.medianame, inputEntry.medianameUrl);
-							}
-							catch (Throwable ex) {
-								log.error("Failed to download file: {}", inputEntry.medianame, ex);
-								errors.incrementAndGet();
-							}
-							return entry;
-						}, downloadExecutor);
+				if (inputEntry.medianameUrl != null) {
+					FutureUtil.submitAsync(() -> planFile(inputEntry.medianame, inputEntry.medianameUrl, metadata.get(inputEntry.medianameUrl)), executor)
+							.whenComplete((download, ex) -> {
+								if (ex != null) {
+									log.error("Failed to check file: {}", inputEntry.medianame, ex);
+									errors.incrementAndGet();
+								}
+								else if (download != null) {
+									downloads.add(download);
+								}
+							});
+				}
+			}
+		}
+		finally {
+			// executor is closed first, so all checks are finished
+			checksumCache.close();
+		}
+
+		// all downloads are known at this point, so the scheduler can start with the smallest
+		try (DownloadScheduler scheduler = new DownloadScheduler(options.jobs, options.hostJobs, options.retries, RETRY_BACKOFF)) {
+			for (Download download: downloads.stream().sorted(Comparator.comparingLong(Download::size)).toList()) {
+				scheduler.submit(download.url, download.size, () -> download(download))
+						.exceptionally(ex -> {
+							log.error("Failed to download file: {}", download.target, ex);
+							errors.incrementAndGet();
+							return null;
+						});
 			}
 		}
 
@@ -161,78 +216,115 @@ public class SyncFilesCommand extends AbstractCommand
 					));
 	}
 
-	private void downloadFile(String localName, String url) throws IOException
+	private Download planFile(String localName, String url, Map<String, String> metadata) throws IOException
 	{
-		log.info("Downloading any: local={} url={}", localName, url);
-		try (InputStream stream = Files.newInputStream(Paths.get(localName))) {
-			Map<String, String> metadata = storageRepository.metadata(url);
-			if (compareChecksum(stream, metadata)) {
-				return;
-			}
-		}
-		catch (FileNotFoundException | NoSuchFileException ex) {
-		}
-
-		try (InputStream input = storageRepository.downloadFile(url)) {
-			Files.copy(input, Paths.get(localName), StandardCopyOption.REPLACE_EXISTING);
+		log.info("Checking any: local={} url={}", localName, url);
+		if (Files.exists(Paths.get(localName)) && compareChecksum(Paths.get(localName), metadata)) {
+			return null;
 		}
+		return new Download(url, sizeOf(metadata), metadata, Paths.get(localName), null, null);
 	}
 
-	private void downloadPdf(String localName, String url) throws IOException
+	private Download planPdf(String localName, String url, Map<String, String> metadata) throws IOException
 	{
 		String fullName;
-		log.info("Downloading pdf: local={} url={}", localName, url);
-		Map<String, String> metadata = storageRepository.metadata(url);
+		log.info("Checking pdf: local={} url={}", localName, url);
 		ThrowingFunction<InputStream, InputStream, IOException> decompressor = null;
 		if (metadata != null && (decompressor = COMPRESSIONS.get(metadata.get("fileExtension"))) != null) {
 			fullName = localName + "." + metadata.get("fileExtension");
-			try (InputStream stream = Files.newInputStream(Paths.get(fullName))) {
-				if (compareChecksum(stream, metadata)) {
-					return;
-				}
-			}
-			catch (FileNotFoundException | NoSuchFileException ex) {
-			}
 		}
 		else {
 			fullName = localName;
-			try (InputStream stream = Files.newInputStream(Paths.get(localName))) {
-				if (compareChecksum(stream, metadata)) {
-					return;
-				}
-			}
-			catch (FileNotFoundException | NoSuchFileException ex) {
+		}
+		if (compareChecksum(Paths.get(fullName), metadata)) {
+			return null;
+		}
+		return new Download(url, sizeOf(metadata), metadata, Paths.get(fullName), decompressor != null ? Paths.get(localName) : null, decompressor);
+	}
+
+	/**
+	 * Downloads file into .part file, resuming previous partial download.  The file is verified and renamed to
+	 * target only when complete.
+	 */
+	private long download(Download download) throws IOException
+	{
+		Path part = partFile(download.target);
+		long offset = Files.exists(part) ? Files.size(part) : 0;
+		if (offset > download.size || download.size == Long.MAX_VALUE) {
+			// cannot tell whether the part belongs to the same file
+			offset = 0;
+		}
+		log.info("Downloading: local={} url={} offset={}", download.target, download.url, offset);
+		long size = 0;
+		if (offset < download.size) {
+			try (
+				InputStream input = storageRepository.downloadFile(download.url, offset);
+				OutputStream output = Files.newOutputStream(part, offset == 0 ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND, StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+			) {
+				size = input.transferTo(output);
 			}
 		}
 
-		try (InputStream input = storageRepository.downloadFile(url)) {
-			Files.copy(input, Paths.get(fullName), StandardCopyOption.REPLACE_EXISTING);
+		if (download.metadata != null && !matchesChecksum(fileChecksums.checksum(part), download.metadata)) {
+			Files.delete(part);
+			throw new IOException("Checksum mismatch of downloaded file, removed partial download: " + download.target);
 		}
+		Files.move(part, download.target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 
-		if (decompressor != null) {
+		if (download.decompressor != null) {
+			Path decompressedPart = partFile(download.decompressed);
 			try (
-				InputStream compressed = Files.newInputStream(Paths.get(fullName));
-				InputStream decompressed = decompressor.apply(compressed)
+				InputStream compressed = Files.newInputStream(download.target);
+				InputStream decompressed = download.decompressor.apply(compressed)
 			) {
-				Files.copy(decompressed, Paths.get(localName), StandardCopyOption.REPLACE_EXISTING);
+				Files.copy(decompressed, decompressedPart, StandardCopyOption.REPLACE_EXISTING);
 			}
+			Files.move(decompressedPart, download.decompressed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 		}
+		return size;
 	}
 
-	private boolean compareChecksum(InputStream stream, Map<String, String> metadata) throws IOException
+	private static Path partFile(Path target)
 	{
-		final String localChecksum;
-		String checksum;
+		return target.resolveSibling(target.getFileName() + ".part");
+	}
+
+	private static long sizeOf(Map<String, String> metadata)
+	{
+		try {
+			return Long.parseLong(metadata.get("size"));
+		}
+		catch (NullPointerException|NumberFormatException ex) {
+			return Long.MAX_VALUE;
+		}
+	}
 
+	private boolean compareChecksum(Path file, Map<String, String> metadata) throws IOException
+	{
 		if (metadata == null) {
 			return false;
 		}
 
+		FileChecksums.Checksums checksums;
+		try {
+			checksums = checksumCache.checksum(file);
+		}
+		catch (FileNotFoundException | NoSuchFileException ex) {
+			return false;
+		}
+		return matchesChecksum(checksums, metadata);
+	}
+
+	private static boolean matchesChecksum(FileChecksums.Checksums checksums, Map<String, String> metadata) throws IOException
+	{
+		final String localChecksum;
+		String checksum;
+
 		if ((checksum = metadata.get("md5")) != null) {
-			localChecksum = DigestUtils.md5Hex(stream);
+			localChecksum = checksums.md5();
 		}
 		else if ((checksum = metadata.get("sha256")) != null) {
-			localChecksum = DigestUtils.sha256Hex(stream);
+			localChecksum = checksums.sha256();
 		}
 		else {
 			throw new IOException("Unsupported checksum algorithm: " + metadata);
@@ -241,14 +333,43 @@ public class SyncFilesCommand extends AbstractCommand
 		return localChecksum.equals(checksum);
 	}
 
+	@Override
+	protected Map<String, String> configOptionsDescription(CommandContext context)
+	{
+		return ImmutableMap.of(
+			"-j jobs", "number of parallel downloads (default " + DEFAULT_JOBS + ")",
+			"--host-jobs jobs", "number of parallel downloads from single host (default " + DEFAULT_JOBS + ")",
+			"--retries count", "number of retries of failed download (default " + DEFAULT_RETRIES + ")",
+			"--verify", "hash all local files again, ignoring cached checksums of unchanged files"
+		);
+	}
+
 	protected Map<String, String> configParametersDescription(CommandContext context)
 	{
 		return ImmutableMap.of(
 		);
 	}
 
+	private record Download(
+		String url,
+		long size,
+		Map<String, String> metadata,
+		Path target,
+		Path decompressed,
+		ThrowingFunction<InputStream, InputStream, IOException> decompressor
+	)
+	{
+	}
+
 	public static class Options
 	{
+		private int jobs = DEFAULT_JOBS;
+
+		private int hostJobs = DEFAULT_JOBS;
+
+		private int retries = DEFAULT_RETRIES;
+
+		private boolean verify;
 	}
 
 	@Builder
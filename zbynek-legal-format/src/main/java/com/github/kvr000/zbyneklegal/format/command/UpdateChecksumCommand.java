@@ -1,6 +1,8 @@
 package com.github.kvr000.zbyneklegal.format.command;
 
 import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
+import com.github.kvr000.zbyneklegal.format.file.ChecksumCache;
+import com.github.kvr000.zbyneklegal.format.file.FileChecksums;
 import com.github.kvr000.zbyneklegal.format.indexfile.IndexReader;
 import com.github.kvr000.zbyneklegal.format.table.TableUpdator;
 import com.github.kvr000.zbyneklegal.format.table.TableUpdatorFactory;
@@ -11,21 +13,19 @@ import lombok.Builder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import net.dryuf.base.concurrent.executor.CloseableExecutor;
-import net.dryuf.base.concurrent.executor.CommonPoolExecutor;
+import net.dryuf.base.concurrent.executor.ClosingExecutor;
 import net.dryuf.base.concurrent.future.FutureUtil;
 import net.dryuf.cmdline.command.AbstractCommand;
 import net.dryuf.cmdline.command.CommandContext;
-import org.apache.commons.codec.digest.DigestUtils;
 
 import javax.inject.Inject;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 
@@ -37,9 +37,23 @@ public class UpdateChecksumCommand extends AbstractCommand
 
 	private final TableUpdatorFactory tableUpdatorFactory;
 
+	private final FileChecksums fileChecksums;
+
 	private Options options = new Options();
 
 	protected boolean parseOption(CommandContext context, String arg, ListIterator<String> args) throws Exception {
+		switch (arg) {
+		case "-j":
+			options.jobs = Integer.parseInt(needArgsParam(options.jobs == FileChecksums.DEFAULT_PARALLELISM ? null : options.jobs, args));
+			if (options.jobs < 1) {
+				throw new IllegalArgumentException("-j jobs must be positive");
+			}
+			return true;
+
+		case "--verify":
+			options.verify = true;
+			return true;
+		}
 		return super.parseOption(context, arg, args);
 	}
 
@@ -62,7 +76,11 @@ public class UpdateChecksumCommand extends AbstractCommand
 		filesIndex = tableUpdatorFactory.openTableUpdator(Paths.get(mainOptions.getListFile()), mainOptions.getListSheet(), "Name");
 		files = readListFile();
 
-		try (CloseableExecutor executor = CommonPoolExecutor.getInstance()) {
+		// hashing is bound by disk, use dedicated limited pool instead of common pool
+		try (
+			ChecksumCache checksumCache = ChecksumCache.open(Paths.get(mainOptions.getListFile()), fileChecksums, options.verify);
+			CloseableExecutor executor = new ClosingExecutor(Executors.newFixedThreadPool(options.jobs))
+		) {
 			for (Map.Entry<String, InputEntry> inputMapEntry: files.entrySet()) {
 				InputEntry inputEntry = inputMapEntry.getValue();
 				FutureUtil.submitAsync(() -> {
@@ -74,9 +92,7 @@ public class UpdateChecksumCommand extends AbstractCommand
 							log.error("Cannot find file: {}", inputEntry.filename);
 							return null;
 						}
-						try (InputStream stream = Files.newInputStream(file.toPath())) {
-							inputEntry.checksum = DigestUtils.sha256Hex(stream);
-						}
+						inputEntry.checksum = checksumCache.checksum(file.toPath()).sha256();
 					}
 					return null;
 				}, executor)
@@ -92,9 +108,7 @@ public class UpdateChecksumCommand extends AbstractCommand
 							log.error("Cannot find file: {}", inputEntry.media);
 							return null;
 						}
-						try (InputStream stream = Files.newInputStream(file.toPath())) {
-							inputEntry.mediaChecksum = DigestUtils.sha256Hex(stream);
-						}
+						inputEntry.mediaChecksum = checksumCache.checksum(file.toPath()).sha256();
 					}
 					return null;
 				}, executor)
@@ -164,6 +178,15 @@ public class UpdateChecksumCommand extends AbstractCommand
 		throw new FileNotFoundException("File not found: " + name);
 	}
 
+	@Override
+	protected Map<String, String> configOptionsDescription(CommandContext context)
+	{
+		return ImmutableMap.of(
+			"-j jobs", "number of files hashed in parallel (default " + FileChecksums.DEFAULT_PARALLELISM + ")",
+			"--verify", "hash all files again, ignoring cached checksums of unchanged files"
+		);
+	}
+
 	protected Map<String, String> configParametersDescription(CommandContext context)
 	{
 		return ImmutableMap.of(
@@ -174,6 +197,9 @@ public class UpdateChecksumCommand extends AbstractCommand
 
 	public static class Options
 	{
+		private int jobs = FileChecksums.DEFAULT_PARALLELISM;
+
+		private boolean verify;
 	}
 
 	@Builder
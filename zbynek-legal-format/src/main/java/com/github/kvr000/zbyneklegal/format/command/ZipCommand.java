@@ -82,7 +82,7 @@ public class ZipCommand extends AbstractCommand
 
 		Map<String, InputEntry> files;
 
-		filesIndex = tableUpdatorFactory.openTableUpdator(Paths.get(mainOptions.getListFile()), mainOptions.getListSheet(), "Name");
+		filesIndex = tableUpdatorFactory.openTableReader(Paths.get(mainOptions.getListFile()), mainOptions.getListSheet(), "Name");
 		files = readListFile();
 
 		List<Path> toCompress = new ArrayList<>();
@@ -0,0 +1,92 @@
+package com.github.kvr000.zbyneklegal.format.daemon;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Thin client forwarding the command to daemon.  Uses only JDK classes and has its own main, so it starts without
+ * initializing logging and the rest of the application.
+ */
+public class DaemonClient
+{
+	public static void main(String[] args)
+	{
+		if (args.length < 2) {
+			System.err.println("Usage: DaemonClient socket zbynek-legal-format-arguments...");
+			System.exit(122);
+		}
+		System.exit(runMain(Path.of(args[0]), Arrays.asList(args).subList(1, args.length)));
+	}
+
+	/**
+	 * Runs the command in daemon, printing its output.
+	 *
+	 * @return
+	 * 	exit code of the command
+	 */
+	public static int run(Path socket, List<String> args) throws IOException
+	{
+		try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+			DaemonProtocol.writeRequest(output, Path.of("").toAbsolutePath().toString(), args);
+			byte[] buffer = new byte[8192];
+			for (;;) {
+				int type;
+				try {
+					type = input.readByte();
+				}
+				catch (EOFException ex) {
+					throw new IOException("Daemon closed connection without exit code", ex);
+				}
+				if (type == DaemonProtocol.FRAME_EXIT) {
+					System.out.flush();
+					System.err.flush();
+					return input.readInt();
+				}
+				OutputStream target = switch (type) {
+					case DaemonProtocol.FRAME_STDOUT -> System.out;
+					case DaemonProtocol.FRAME_STDERR -> System.err;
+					default -> throw new IOException("Unexpected frame from daemon: " + type);
+				};
+				for (int length = input.readInt(); length > 0; ) {
+					int read = input.read(buffer, 0, Math.min(length, buffer.length));
+					if (read < 0) {
+						throw new EOFException("Daemon closed connection within frame");
+					}
+					target.write(buffer, 0, read);
+					length -= read;
+				}
+				target.flush();
+			}
+		}
+	}
+
+	/**
+	 * Runs the command in daemon, reporting failure to stderr.
+	 *
+	 * @return
+	 * 	exit code of the command, 121 on communication failure
+	 */
+	public static int runMain(Path socket, List<String> args)
+	{
+		try {
+			return run(socket, args);
+		}
+		catch (IOException ex) {
+			System.err.println("Failed to run command in daemon: socket=" + socket + ": " + ex);
+			return 121;
+		}
+	}
+}
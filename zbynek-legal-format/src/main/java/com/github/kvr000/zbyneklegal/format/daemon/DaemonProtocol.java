@@ -0,0 +1,120 @@
+package com.github.kvr000.zbyneklegal.format.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Protocol between daemon and client.
+ *
+ * The client sends magic, working directory and arguments.  The daemon replies with frames of standard output and
+ * error, terminated by exit code frame.  All numbers are big endian, strings are length prefixed UTF-8.
+ */
+public class DaemonProtocol
+{
+	public static final int MAGIC = 0x5a4c4601;
+
+	public static final int FRAME_EXIT = 0;
+
+	public static final int FRAME_STDOUT = 1;
+
+	public static final int FRAME_STDERR = 2;
+
+	public static void writeRequest(DataOutputStream output, String cwd, List<String> args) throws IOException
+	{
+		output.writeInt(MAGIC);
+		writeString(output, cwd);
+		output.writeInt(args.size());
+		for (String arg: args) {
+			writeString(output, arg);
+		}
+		output.flush();
+	}
+
+	public static Request readRequest(DataInputStream input) throws IOException
+	{
+		if (input.readInt() != MAGIC) {
+			throw new IOException("Unexpected daemon protocol magic");
+		}
+		String cwd = readString(input);
+		int count = input.readInt();
+		List<String> args = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+			args.add(readString(input));
+		}
+		return new Request(cwd, args);
+	}
+
+	public static void writeExit(DataOutputStream output, int exitCode) throws IOException
+	{
+		synchronized (output) {
+			output.writeByte(FRAME_EXIT);
+			output.writeInt(exitCode);
+			output.flush();
+		}
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(DataInputStream input) throws IOException
+	{
+		return new String(input.readNBytes(input.readInt()), StandardCharsets.UTF_8);
+	}
+
+	public record Request(String cwd, List<String> args)
+	{
+	}
+
+	/**
+	 * Writes data as frames of the given type.
+	 */
+	public static class FrameOutputStream extends OutputStream
+	{
+		private final DataOutputStream output;
+
+		private final int type;
+
+		public FrameOutputStream(DataOutputStream output, int type)
+		{
+			this.output = output;
+			this.type = type;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			write(new byte[]{ (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0) {
+				return;
+			}
+			synchronized (output) {
+				output.writeByte(type);
+				output.writeInt(len);
+				output.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			synchronized (output) {
+				output.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.github.kvr000.zbyneklegal.format.file;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Checksums of local files, stored next to the index file as {@code .name.checksums}.
+ *
+ * The cached checksum is used while the file has the same size, modification time and file key (device and inode),
+ * otherwise the file is hashed again.  In verify mode all files are hashed and mismatches with unchanged files are
+ * reported.  The database is saved on close, when anything changed.
+ */
+@Log4j2
+public class ChecksumCache implements Closeable
+{
+	private static final byte[] MAGIC = "ZLFCSUM\n".getBytes(StandardCharsets.US_ASCII);
+
+	/** Increase when format changes. */
+	private static final int VERSION = 1;
+
+	private final Path databaseFile;
+
+	private final FileChecksums fileChecksums;
+
+	private final boolean verify;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private volatile boolean modified;
+
+	private ChecksumCache(Path databaseFile, FileChecksums fileChecksums, boolean verify)
+	{
+		this.databaseFile = databaseFile;
+		this.fileChecksums = fileChecksums;
+		this.verify = verify;
+	}
+
+	/**
+	 * Opens checksum database belonging to the index file.
+	 *
+	 * @param indexFile
+	 * 	index file, the database is stored in the same directory
+	 * @param fileChecksums
+	 * 	checksum calculator
+	 * @param verify
+	 * 	whether to ignore cached values and hash all files again
+	 */
+	public static ChecksumCache open(Path indexFile, FileChecksums fileChecksums, boolean verify)
+	{
+		Path databaseFile = indexFile.toAbsolutePath().resolveSibling("." + indexFile.getFileName() + ".checksums");
+		ChecksumCache cache = new ChecksumCache(databaseFile, fileChecksums, verify);
+		try {
+			cache.read();
+		}
+		catch (NoSuchFileException ex) {
+			// not yet created
+		}
+		catch (IOException|RuntimeException ex) {
+			log.warn("Ignoring broken checksum database: file={}: {}", databaseFile, ex.toString());
+			cache.entries.clear();
+		}
+		return cache;
+	}
+
+	/**
+	 * Gets checksums of the file, from cache if the file is unchanged.
+	 */
+	public FileChecksums.Checksums checksum(Path file) throws IOException
+	{
+		String path = file.toAbsolutePath().normalize().toString();
+		Stat stat = Stat.of(file);
+		Entry cached = entries.get(path);
+		if (cached != null && cached.stat.equals(stat) && !verify) {
+			return cached.checksums;
+		}
+		FileChecksums.Checksums checksums = fileChecksums.checksum(file);
+		if (cached != null && cached.stat.equals(stat) && !cached.checksums.equals(checksums)) {
+			log.warn("Checksum changed while file stat did not: file={} cached={} current={}", file, cached.checksums.sha256(), checksums.sha256());
+		}
+		// do not cache if the file was modified while hashing
+		if (Stat.of(file).equals(stat)) {
+			entries.put(path, new Entry(stat, checksums));
+			modified = true;
+		}
+		return checksums;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (!modified) {
+			return;
+		}
+		entries.keySet().removeIf(path -> !Files.exists(Path.of(path)));
+		Path temp = Files.createTempFile(databaseFile.getParent(), databaseFile.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				output.write(MAGIC);
+				output.writeInt(VERSION);
+				output.writeInt(entries.size());
+				for (Map.Entry<String, Entry> entry: entries.entrySet()) {
+					output.writeUTF(entry.getKey());
+					output.writeLong(entry.getValue().stat.size);
+					output.writeLong(entry.getValue().stat.modified);
+					output.writeUTF(entry.getValue().stat.fileKey);
+					output.writeUTF(entry.getValue().checksums.sha256());
+					output.writeUTF(entry.getValue().checksums.md5());
+				}
+			}
+			Files.move(temp, databaseFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException ex) {
+			Files.deleteIfExists(temp);
+			log.warn("Failed to write checksum database: file={}: {}", databaseFile, ex.toString());
+		}
+	}
+
+	private void read() throws IOException
+	{
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(databaseFile)))) {
+			byte[] magic = new byte[MAGIC.length];
+			input.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC) || input.readInt() != VERSION) {
+				return;
+			}
+			for (int i = input.readInt(); --i >= 0; ) {
+				String path = input.readUTF();
+				Stat stat = new Stat(input.readLong(), input.readLong(), input.readUTF());
+				entries.put(path, new Entry(stat, new FileChecksums.Checksums(input.readUTF(), input.readUTF())));
+			}
+		}
+		catch (EOFException ex) {
+			throw new IOException("Truncated checksum database: " + databaseFile, ex);
+		}
+	}
+
+	private record Stat(long size, long modified, String fileKey)
+	{
+		static Stat of(Path file) throws IOException
+		{
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return new Stat(
+				attributes.size(),
+				attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+				Objects.toString(attributes.fileKey(), "")
+			);
+		}
+	}
+
+	private record Entry(Stat stat, FileChecksums.Checksums checksums)
+	{
+	}
+}
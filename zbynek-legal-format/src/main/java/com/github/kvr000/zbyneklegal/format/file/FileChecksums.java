@@ -0,0 +1,81 @@
+package com.github.kvr000.zbyneklegal.format.file;
+
+import org.apache.commons.codec.binary.Hex;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * Calculates file checksums.  The file is memory mapped in regions and read only once for all supported algorithms.
+ */
+@Singleton
+public class FileChecksums
+{
+	/** Default number of files hashed in parallel, more rarely helps as the disk becomes bottleneck. */
+	public static final int DEFAULT_PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+	private static final long MAP_REGION_SIZE = 64L << 20;
+
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Calculates SHA256 and MD5 of the file.
+	 */
+	public Checksums checksum(Path file) throws IOException
+	{
+		MessageDigest sha256 = newDigest("SHA-256");
+		MessageDigest md5 = newDigest("MD5");
+		byte[] chunk = new byte[CHUNK_SIZE];
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			for (long position = 0; position < size; position += MAP_REGION_SIZE) {
+				MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_REGION_SIZE, size - position));
+				while (region.hasRemaining()) {
+					int length = Math.min(chunk.length, region.remaining());
+					region.get(chunk, 0, length);
+					sha256.update(chunk, 0, length);
+					md5.update(chunk, 0, length);
+				}
+			}
+		}
+		return new Checksums(Hex.encodeHexString(sha256.digest()), Hex.encodeHexString(md5.digest()));
+	}
+
+	private static MessageDigest newDigest(String algorithm)
+	{
+		try {
+			return MessageDigest.getInstance(algorithm);
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Checksums of the file, as lowercase hex strings.
+	 */
+	public record Checksums(String sha256, String md5)
+	{
+		/**
+		 * Gets checksum by storage metadata name.
+		 *
+		 * @return
+		 * 	the checksum or null if algorithm is not supported
+		 */
+		public String get(String algorithm)
+		{
+			return switch (algorithm) {
+				case "sha256" -> sha256;
+				case "md5" -> md5;
+				default -> null;
+			};
+		}
+	}
+}
@@ -1,59 +1,130 @@
 package com.github.kvr000.zbyneklegal.format.indexfile;
 
+import com.github.kvr000.zbyneklegal.format.table.ColumnarTable;
 import com.github.kvr000.zbyneklegal.format.table.TableUpdator;
-import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
-import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
-import net.dryuf.base.exception.ExceptionUtil;
 
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 
 
-@RequiredArgsConstructor
 public class IndexReader
 {
     private static final Set<String> CONFIG_KEYS = Set.of("TABMAP", "BASE", "FILES");
 
+    private static final String EXHIBIT_SUFFIX = " Exh";
+
     private final Map<String, Integer> headers;
 
-    private final Map<String, Map<String, String>> entries;
+    private final ColumnarTable entries;
+
+    /** Rows which are not config rows. */
+    private final BitSet dataRows;
+
+    /** Included rows for each exhibit key, computed once when opening the index. */
+    private final Map<String, BitSet> includedByKey;
 
     public IndexReader(TableUpdator table)
     {
-        this.headers = table.getHeaders();
-        this.entries = table.listEntries().entrySet().stream()
-                .filter(rec -> !CONFIG_KEYS.contains(rec.getKey()))
-                .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
+        this(table.getHeaders(), table.listColumns());
+    }
+
+    public IndexReader(Map<String, Integer> headers, ColumnarTable entries)
+    {
+        this.headers = headers;
+        this.entries = entries;
+
+        dataRows = new BitSet(entries.size());
+        for (int i = 0; i < entries.size(); ++i) {
+            if (!CONFIG_KEYS.contains(entries.getId(i))) {
+                dataRows.set(i);
+            }
+        }
+
+        ImmutableMap.Builder<String, BitSet> included = ImmutableMap.builder();
+        for (String header: headers.keySet()) {
+            if (header.endsWith(EXHIBIT_SUFFIX)) {
+                String[] column = entries.getColumn(header);
+                BitSet rows = new BitSet(entries.size());
+                if (column != null) {
+                    for (int i = 0; i < column.length; ++i) {
+                        if (isIncludedValue(column[i])) {
+                            rows.set(i);
+                        }
+                    }
+                }
+                included.put(header.substring(0, header.length() - EXHIBIT_SUFFIX.length()), rows);
+            }
+        }
+        includedByKey = included.buildOrThrow();
     }
 
-    @SneakyThrows
     public Map<String, Map<String, String>> readIndex(Collection<String> exhibitKeys) throws IOException
     {
         if (exhibitKeys != null) {
-            exhibitKeys.forEach(key -> {
-                        String fullname = key + " Exh";
-                        if (!headers.containsKey(fullname)) {
-                            throw ExceptionUtil.sneakyThrow(new IOException("Header not found in index file: " + fullname));
-                        }
-                    });
+            for (String key: exhibitKeys) {
+                String fullname = key + EXHIBIT_SUFFIX;
+                if (!headers.containsKey(fullname)) {
+                    throw new IOException("Header not found in index file: " + fullname);
+                }
+            }
         }
 
-        return entries.entrySet().stream()
-                .filter(rec -> isExhibitIncluded(rec.getKey(), exhibitKeys))
-                .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
+        BitSet selected = getIncluded(exhibitKeys);
+        selected.and(dataRows);
+        ImmutableMap.Builder<String, Map<String, String>> result = ImmutableMap.builderWithExpectedSize(selected.cardinality());
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+            result.put(entries.getId(i), entries.getRow(i));
+        }
+        return result.buildOrThrow();
     }
 
     public boolean isExhibitIncluded(String id, Collection<String> exhibitKeys)
     {
-        return exhibitKeys == null || exhibitKeys.stream()
-                .map(key -> this.entries.get(id).get(key + " Exh"))
-                .map(Strings::emptyToNull)
-                .filter(Objects::nonNull)
-                .anyMatch(s -> !s.equals("exclude") && !s.startsWith("exclude:") && !s.startsWith("ref:"));
+        if (exhibitKeys == null) {
+            return true;
+        }
+        int ordinal = entries.getOrdinal(id);
+        if (ordinal < 0 || !dataRows.get(ordinal)) {
+            throw new IllegalArgumentException("Trying to access invalid id: " + id);
+        }
+        for (String key: exhibitKeys) {
+            BitSet rows = includedByKey.get(key);
+            if (rows != null && rows.get(ordinal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets rows included by any of the keys.
+     *
+     * @return
+     * 	new bitset, all rows if keys are null
+     */
+    private BitSet getIncluded(Collection<String> exhibitKeys)
+    {
+        BitSet result = new BitSet(entries.size());
+        if (exhibitKeys == null) {
+            result.set(0, entries.size());
+        }
+        else {
+            for (String key: exhibitKeys) {
+                BitSet rows = includedByKey.get(key);
+                if (rows != null) {
+                    result.or(rows);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isIncludedValue(String value)
+    {
+        return value != null && !value.isEmpty() && !value.equals("exclude") && !value.startsWith("exclude:") && !value.startsWith("ref:");
     }
 }
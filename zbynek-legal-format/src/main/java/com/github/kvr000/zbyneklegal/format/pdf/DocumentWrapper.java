@@ -3,6 +3,8 @@ package com.github.kvr000.zbyneklegal.format.pdf;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessStreamCache;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 import java.io.Closeable;
@@ -15,6 +17,8 @@ public class DocumentWrapper implements Closeable
     @Getter
     private File inputFile;
 
+    private final RandomAccessStreamCache.StreamCacheCreateFunction streamCache;
+
     @Getter
     private PDDocument document;
 
@@ -23,8 +27,14 @@ public class DocumentWrapper implements Closeable
     private boolean needRefresh;
 
     public DocumentWrapper(File inputFile) throws IOException
+    {
+        this(inputFile, IOUtils.createMemoryOnlyStreamCache());
+    }
+
+    public DocumentWrapper(File inputFile, RandomAccessStreamCache.StreamCacheCreateFunction streamCache) throws IOException
     {
         this.inputFile = inputFile;
+        this.streamCache = streamCache;
         this.needRefresh = true;
         getFreshDocument();
         this.needRefresh = false;
@@ -37,7 +47,7 @@ public class DocumentWrapper implements Closeable
                 this.document.close();
                 this.document = null;
             }
-            this.document = Loader.loadPDF(inputFile);
+            this.document = Loader.loadPDF(inputFile, streamCache);
         }
         this.needRefresh = true;
         return this.document;
@@ -0,0 +1,163 @@
+package com.github.kvr000.zbyneklegal.format.pdf;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.blend.BlendMode;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+import org.apache.pdfbox.util.Matrix;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Detects pages consisting of single JPEG image covering the whole page, typically scans.
+ *
+ * The content stream may only change graphics state and draw the image.  Anything else, such as text, paths,
+ * clipping, transparency or rotated placement, means the page must be rendered.
+ */
+@Singleton
+public class ImagePageAnalyzer
+{
+	/** Operators which do not paint nor clip. */
+	private static final Set<String> STATE_OPERATORS = Set.of(
+		"w", "J", "j", "M", "d", "ri", "i",
+		"CS", "cs", "SC", "SCN", "sc", "scn", "G", "g", "RG", "rg", "K", "k",
+		"MP", "DP", "BMC", "BDC", "EMC", "BX", "EX"
+	);
+
+	/** Tolerance of image placement, in points. */
+	private static final float PLACEMENT_TOLERANCE = 1.0f;
+
+	/**
+	 * Finds the image covering the whole page.
+	 *
+	 * @return
+	 * 	DCT encoded RGB or gray image drawn over the whole unrotated page, null if page has other content
+	 */
+	public PDImageXObject findPageImage(PDPage page) throws IOException
+	{
+		if (page.getRotation() % 360 != 0 || !sameBox(page.getMediaBox(), page.getCropBox()) || !page.hasContents()) {
+			return null;
+		}
+		PDResources resources = page.getResources();
+		if (resources == null) {
+			return null;
+		}
+		PDImageXObject found = null;
+		Matrix ctm = new Matrix();
+		Deque<Matrix> stack = new ArrayDeque<>();
+		List<COSBase> operands = new ArrayList<>();
+		PDFStreamParser parser = new PDFStreamParser(page);
+		try {
+			for (Object token = parser.parseNextToken(); token != null; token = parser.parseNextToken()) {
+				if (!(token instanceof Operator operator)) {
+					operands.add((COSBase) token);
+					continue;
+				}
+				switch (operator.getName()) {
+				case "q" -> stack.push(ctm.clone());
+				case "Q" -> {
+					if (stack.isEmpty()) {
+						return null;
+					}
+					ctm = stack.pop();
+				}
+				case "cm" -> {
+					if (operands.size() != 6 || !operands.stream().allMatch(COSNumber.class::isInstance)) {
+						return null;
+					}
+					float[] values = new float[6];
+					for (int i = 0; i < 6; ++i) {
+						values[i] = ((COSNumber) operands.get(i)).floatValue();
+					}
+					ctm = new Matrix(values[0], values[1], values[2], values[3], values[4], values[5]).multiply(ctm);
+				}
+				case "gs" -> {
+					if (operands.size() != 1 || !(operands.get(0) instanceof COSName name) || !isOpaqueState(resources.getExtGState(name))) {
+						return null;
+					}
+				}
+				case "Do" -> {
+					if (found != null || operands.size() != 1 || !(operands.get(0) instanceof COSName name)) {
+						return null;
+					}
+					PDXObject xobject = resources.getXObject(name);
+					if (!(xobject instanceof PDImageXObject image) || !isPlainJpeg(image) || !coversPage(ctm, page.getMediaBox())) {
+						return null;
+					}
+					found = image;
+				}
+				default -> {
+					if (!STATE_OPERATORS.contains(operator.getName())) {
+						return null;
+					}
+				}
+				}
+				operands.clear();
+			}
+		}
+		finally {
+			parser.close();
+		}
+		return found;
+	}
+
+	private static boolean isOpaqueState(PDExtendedGraphicsState state)
+	{
+		return state != null &&
+			state.getSoftMask() == null &&
+			(state.getNonStrokingAlphaConstant() == null || state.getNonStrokingAlphaConstant() == 1.0f) &&
+			(state.getBlendMode() == null || state.getBlendMode() == BlendMode.NORMAL);
+	}
+
+	private static boolean isPlainJpeg(PDImageXObject image) throws IOException
+	{
+		COSStream stream = image.getCOSObject();
+		COSBase filter = stream.getDictionaryObject(COSName.FILTER);
+		if (filter instanceof COSArray array && array.size() == 1) {
+			filter = array.getObject(0);
+		}
+		return COSName.DCT_DECODE.equals(filter) &&
+			!image.isStencil() &&
+			image.getBitsPerComponent() == 8 &&
+			image.getDecode() == null &&
+			!stream.containsKey(COSName.SMASK) &&
+			!stream.containsKey(COSName.MASK) &&
+			(image.getColorSpace() instanceof PDDeviceRGB || image.getColorSpace() instanceof PDDeviceGray);
+	}
+
+	private static boolean coversPage(Matrix ctm, PDRectangle box)
+	{
+		return Math.abs(ctm.getShearX()) < 1e-3f && Math.abs(ctm.getShearY()) < 1e-3f &&
+			Math.abs(ctm.getScaleX() - box.getWidth()) <= PLACEMENT_TOLERANCE &&
+			Math.abs(ctm.getScaleY() - box.getHeight()) <= PLACEMENT_TOLERANCE &&
+			Math.abs(ctm.getTranslateX() - box.getLowerLeftX()) <= PLACEMENT_TOLERANCE &&
+			Math.abs(ctm.getTranslateY() - box.getLowerLeftY()) <= PLACEMENT_TOLERANCE;
+	}
+
+	private static boolean sameBox(PDRectangle a, PDRectangle b)
+	{
+		return Math.abs(a.getLowerLeftX() - b.getLowerLeftX()) <= PLACEMENT_TOLERANCE &&
+			Math.abs(a.getLowerLeftY() - b.getLowerLeftY()) <= PLACEMENT_TOLERANCE &&
+			Math.abs(a.getUpperRightX() - b.getUpperRightX()) <= PLACEMENT_TOLERANCE &&
+			Math.abs(a.getUpperRightY() - b.getUpperRightY()) <= PLACEMENT_TOLERANCE;
+	}
+}
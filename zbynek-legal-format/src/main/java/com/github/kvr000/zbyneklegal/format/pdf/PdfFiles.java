@@ -7,10 +7,12 @@ import org.apache.pdfbox.cos.COSDocument;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSObject;
 import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessStreamCache;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.common.PDStream;
 
-import javax.inject.Singleton;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -20,10 +22,42 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 
 
-@Singleton
+/**
+ * Loads, creates and saves PDF documents.  Created per command, with the memory limit of the command line, so nested
+ * commands run by batch or daemon do not affect each other.
+ */
 @Log4j2
 public class PdfFiles
 {
+	private final PdfPageScanner pageScanner;
+
+	private final RandomAccessStreamCache.StreamCacheCreateFunction streamCache;
+
+	public PdfFiles(PdfPageScanner pageScanner)
+	{
+		this(pageScanner, null);
+	}
+
+	/**
+	 * Creates instance limiting main memory used for streams of each loaded or created document, the rest goes to
+	 * temporary files.
+	 *
+	 * @param memoryLimit
+	 * 	max bytes kept in memory per document, null for unlimited
+	 */
+	public PdfFiles(PdfPageScanner pageScanner, Long memoryLimit)
+	{
+		this.pageScanner = pageScanner;
+		this.streamCache = memoryLimit == null ?
+			IOUtils.createMemoryOnlyStreamCache() :
+			MemoryUsageSetting.setupMixed(memoryLimit).streamCache;
+	}
+
+	public PDDocument createDocument()
+	{
+		return new PDDocument(streamCache);
+	}
+
 	public File saveToTmp(PDDocument doc) throws IOException
 	{
 		File tmp = File.createTempFile("tmp", ".pdf");
@@ -48,7 +82,7 @@ public class PdfFiles
 	public PDDocument load(Path input) throws IOException
 	{
 		try {
-			PDDocument doc = Loader.loadPDF(input.toFile());
+			PDDocument doc = Loader.loadPDF(input.toFile(), streamCache);
 			return doc;
 		}
 		catch (IOException ex) {
@@ -56,11 +90,14 @@ public class PdfFiles
 		}
 	}
 
+	public DocumentWrapper openWrapper(Path input) throws IOException
+	{
+		return new DocumentWrapper(input.toFile(), streamCache);
+	}
+
 	public int countPages(Path input) throws IOException
 	{
-		try (PDDocument doc = load(input)) {
-			return doc.getNumberOfPages();
-		}
+		return pageScanner.countPages(input);
 	}
 
 	public void decompress(PDDocument doc)
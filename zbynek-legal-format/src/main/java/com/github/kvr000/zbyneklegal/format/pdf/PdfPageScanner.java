@@ -0,0 +1,66 @@
+package com.github.kvr000.zbyneklegal.format.pdf;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Reads page count and page geometry without materializing the document.
+ *
+ * The document is parsed lazily, only trailer, xref and page tree objects get resolved, content streams and resources
+ * are never touched.  Suitable for planning phases which only need numbering and sizes.
+ */
+@Singleton
+public class PdfPageScanner
+{
+	public List<PageGeometry> scanPages(Path input) throws IOException
+	{
+		try (PDDocument doc = Loader.loadPDF(input.toFile(), IOUtils.createTempFileOnlyStreamCache())) {
+			List<PageGeometry> pages = new ArrayList<>(doc.getNumberOfPages());
+			for (PDPage page: doc.getPages()) {
+				pages.add(new PageGeometry(page.getMediaBox(), page.getRotation()));
+			}
+			return pages;
+		}
+		catch (IOException ex) {
+			throw new IOException("Failed to scan PDF: " + input, ex);
+		}
+	}
+
+	public int countPages(Path input) throws IOException
+	{
+		try (PDDocument doc = Loader.loadPDF(input.toFile(), IOUtils.createTempFileOnlyStreamCache())) {
+			return doc.getNumberOfPages();
+		}
+		catch (IOException ex) {
+			throw new IOException("Failed to scan PDF: " + input, ex);
+		}
+	}
+
+	public record PageGeometry(PDRectangle mediaBox, int rotation)
+	{
+		public boolean isRotated()
+		{
+			return rotation == 90 || rotation == 270;
+		}
+
+		public float rotatedWidth()
+		{
+			return isRotated() ? mediaBox.getHeight() : mediaBox.getWidth();
+		}
+
+		public float rotatedHeight()
+		{
+			return isRotated() ? mediaBox.getWidth() : mediaBox.getHeight();
+		}
+	}
+}
@@ -3,8 +3,13 @@ package com.github.kvr000.zbyneklegal.format.pdf;
 import com.github.kvr000.zbyneklegal.format.collection.CloseableIterator;
 import com.google.common.collect.ImmutableList;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.io.FileUtils;
+import net.dryuf.base.concurrent.executor.CloseableExecutor;
+import net.dryuf.base.concurrent.executor.ClosingExecutor;
 import org.apache.logging.log4j.util.Strings;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -21,19 +26,31 @@ import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -45,10 +62,20 @@ public class PdfRenderer implements AutoCloseable
 
 	private static final boolean HAS_PDFTOCAIRO;
 
+	private static final int RENDER_WORKERS = Runtime.getRuntime().availableProcessors();
+
+	private static final int LOOK_AHEAD_PER_WORKER = 2;
+
 	private final PDDocument document;
 
 	private final PDFMergerUtility merger;
 
+	/** Fonts shared by all pages of the document, so each is written as single object. */
+	private final Map<Standard14Fonts.FontName, PDFont> fonts = new EnumMap<>(Standard14Fonts.FontName.class);
+
+	/** Saves graphics state before original content, shared by all overlaid pages. */
+	private COSStream saveStateStream;
+
 	static {
 		int exit;
 		try {
@@ -71,6 +98,72 @@ public class PdfRenderer implements AutoCloseable
 		this.merger = new PDFMergerUtility();
 	}
 
+	/**
+	 * Gets standard font registered for this document.  Same instance is returned for all calls, so pages refer to
+	 * single font dictionary instead of creating new one for each page.
+	 */
+	public PDFont getStandardFont(Standard14Fonts.FontName name)
+	{
+		return fonts.computeIfAbsent(name, PDType1Font::new);
+	}
+
+	/**
+	 * Opens overlay stream on top of the page content.
+	 *
+	 * Unlike APPEND mode with context reset, the save state prefix is single stream shared by all pages and the
+	 * overlay is not compressed, as it contains just few operators.
+	 */
+	public PDPageContentStream openOverlay(PDPage page) throws IOException
+	{
+		if (!page.hasContents()) {
+			return new PDPageContentStream(document, page, PDPageContentStream.AppendMode.APPEND, false, false);
+		}
+		COSArray contents;
+		COSBase existing = page.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+		if (existing instanceof COSArray array) {
+			contents = array;
+		}
+		else {
+			contents = new COSArray();
+			contents.add(existing);
+			page.getCOSObject().setItem(COSName.CONTENTS, contents);
+		}
+		contents.add(0, getSaveStateStream());
+		PDPageContentStream contentStream = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.APPEND, false, false);
+		contentStream.restoreGraphicsState();
+		return contentStream;
+	}
+
+	/**
+	 * Stamps pages in single pass over the page tree, each page gets overlay opened by {@link #openOverlay(PDPage)}.
+	 */
+	public void stampPages(int from0, int to0, PageStamper stamper) throws IOException
+	{
+		int i = 0;
+		for (PDPage page: document.getPages()) {
+			if (i >= to0) {
+				break;
+			}
+			if (i >= from0) {
+				try (PDPageContentStream contentStream = openOverlay(page)) {
+					stamper.stamp(i - from0, page, contentStream);
+				}
+			}
+			++i;
+		}
+	}
+
+	private COSStream getSaveStateStream() throws IOException
+	{
+		if (saveStateStream == null) {
+			saveStateStream = document.getDocument().createCOSStream();
+			try (OutputStream output = saveStateStream.createOutputStream()) {
+				output.write("q\n".getBytes(StandardCharsets.US_ASCII));
+			}
+		}
+		return saveStateStream;
+	}
+
 	public boolean isRotated(PDPage page)
 	{
 		int rotation = page.getRotation();
@@ -111,7 +204,7 @@ public class PdfRenderer implements AutoCloseable
 		float pageWidth = rotate ? pageSize.getHeight() : pageSize.getWidth();
 		float pageHeight = rotate ? pageSize.getWidth() : pageSize.getHeight();
 
-		PDFont font = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
+		PDFont font = getStandardFont(Standard14Fonts.FontName.HELVETICA_BOLD);
 		float fontSize = 20.0f * (pageHeight / 792.0f);
 
 		float stringWidth = font.getStringWidth(message) * fontSize / 1000f;
@@ -154,7 +247,7 @@ public class PdfRenderer implements AutoCloseable
 		float pageWidth = rotate ? pageSize.getHeight() : pageSize.getWidth();
 		float pageHeight = rotate ? pageSize.getWidth() : pageSize.getHeight();
 
-		PDFont font = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
+		PDFont font = getStandardFont(Standard14Fonts.FontName.HELVETICA_BOLD);
 		float fontSize = 20.0f * (pageHeight / 792.0f);
 
 		float stringWidth = font.getStringWidth(message) * fontSize / 1000f;
@@ -258,110 +351,196 @@ public class PdfRenderer implements AutoCloseable
 		}
 	}
 
-	public CloseableIterator<Path> renderImages(Path inputFile, String format, Double scale, Float quality) throws IOException
+	/**
+	 * Renders pages of the file into encoded images, kept in memory.  Pages are rendered in parallel, by separate
+	 * pdftocairo process per page or by documents loaded for each worker.  The pages are returned in order, rendering
+	 * runs ahead of the consumer by limited number of pages.
+	 *
+	 * @param pdfFiles
+	 * 	loads documents for Java rendering, with memory limit of the command
+	 * @param geometry
+	 * 	geometry of the file pages, as provided by {@link PdfPageScanner#scanPages(Path)}
+	 *
+	 * @return
+	 * 	iterator of encoded page images
+	 */
+	public CloseableIterator<byte[]> renderImages(PdfFiles pdfFiles, Path inputFile, List<PdfPageScanner.PageGeometry> geometry, String format, Double scale, Float quality) throws IOException
 	{
-		Path tmp = Files.createTempDirectory("pdftocairo");
-		List<Path> output;
-		try {
-			if (document.getNumberOfPages() == 0) {
-				output = Collections.emptyList();
+		return renderImages(pdfFiles, inputFile, geometry, null, format, scale, quality);
+	}
+
+	/**
+	 * Renders selected pages of the file into encoded images, see
+	 * {@link #renderImages(PdfFiles, Path, List, String, Double, Float)}.
+	 *
+	 * @param pages
+	 * 	indexes of pages to render, null for all pages
+	 *
+	 * @return
+	 * 	iterator of encoded page images, only for the selected pages
+	 */
+	public CloseableIterator<byte[]> renderImages(PdfFiles pdfFiles, Path inputFile, List<PdfPageScanner.PageGeometry> geometry, BitSet pages, String format, Double scale, Float quality) throws IOException
+	{
+		int pageCount = geometry.size();
+		BitSet selected = new BitSet(pageCount);
+		selected.set(0, pageCount);
+		if (pages != null) {
+			selected.and(pages);
+		}
+		int workers = Math.max(1, Math.min(RENDER_WORKERS, selected.cardinality()));
+		boolean useCairo = HAS_PDFTOCAIRO && (format.equals("jpeg") || format.equals("png"));
+		CloseableExecutor executor = new ClosingExecutor(Executors.newFixedThreadPool(workers));
+		AtomicBoolean cancelled = new AtomicBoolean();
+		// PDFBox documents are not thread safe, each worker borrows its own instance
+		Queue<PDDocument> documents = new ConcurrentLinkedQueue<>();
+
+		return new CloseableIterator<byte[]>()
+		{
+			int submitted = selected.nextSetBit(0);
+
+			final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+
+			{
+				submitAhead();
 			}
-			else if (HAS_PDFTOCAIRO && (format.equals("jpeg") || format.equals("png"))) {
-				PDRectangle box = document.getPage(0).getMediaBox();
-				float targetWidth = box.getWidth() * IMAGE_SCALE;
-				float targetHeight = box.getHeight() * IMAGE_SCALE;
-				if (scale != null) {
-					targetWidth *= scale;
-					targetHeight *= scale;
+
+			@Override
+			public void close() throws IOException
+			{
+				cancelled.set(true);
+				executor.close();
+				for (PDDocument document: documents) {
+					document.close();
 				}
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return !pending.isEmpty();
+			}
+
+			@Override
+			public byte[] next()
+			{
+				CompletableFuture<byte[]> result = pending.poll();
+				if (result == null) {
+					throw new NoSuchElementException();
+				}
+				submitAhead();
 				try {
-					ImmutableList.Builder<String> args = ImmutableList.<String>builder()
-						.add("pdftocairo")
-						.add("-" + format);
-					if (format.equals("jpeg") && quality != null) {
-						args.add("-jpegopt").add("quality=" + Math.round(quality * 100));
-					}
-					if (scale != null) {
-						args.add("-scale-to-x").add(Integer.toString(Math.round(targetWidth)));
-					}
-					args.add(inputFile.toString());
-					args.add(tmp.toString() + File.separator);
-					int exit = new ProcessBuilder(args.build())
-						.redirectError(ProcessBuilder.Redirect.INHERIT)
-						.redirectOutput(ProcessBuilder.Redirect.DISCARD)
-						.start()
-						.waitFor();
-					if (exit != 0) {
-						throw new IOException("Failed to execute " + Strings.join(args.build(), ' ') + ": exit=" + exit);
-					}
+					return result.join();
 				}
-				catch (InterruptedException e) {
-					throw new IOException("Failed to wait for gs", e);
+				catch (CompletionException ex) {
+					if (ex.getCause() instanceof IOException io) {
+						throw new UncheckedIOException(io);
+					}
+					throw ex;
 				}
-				output = Files.list(tmp).sorted().toList();
 			}
-			else {
-				output = new ArrayList<>();
-				PDFRenderer inkRenderer = new PDFRenderer(document);
-				for (int i = 0; i < document.getNumberOfPages(); ++i) {
-					BufferedImage image = inkRenderer.renderImage(i, IMAGE_SCALE);
-					float targetWidth = image.getWidth();
-					float targetHeight = image.getHeight();
-
-					final BufferedImage resizedImage;
-					if (scale == null || scale == 1.0) {
-						resizedImage = image;
-					} else {
-						resizedImage = new BufferedImage((int) targetWidth, (int) targetHeight, BufferedImage.TYPE_INT_RGB);
-
-						Graphics2D g = resizedImage.createGraphics();
-						g.setComposite(AlphaComposite.Src);
-						g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-						g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-						g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-						g.drawImage(image, 0, 0, (int) targetWidth, (int) targetHeight, null);
-						g.dispose();
-					}
 
-					String filename = Integer.toString(i) + "." + format;
-					ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
-					ImageWriteParam param = writer.getDefaultWriteParam();
-					param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-					param.setCompressionQuality(quality);
-					Path out = tmp.resolve(filename);
-					log.info("Writing to: filename={}", out);
-					writer.setOutput(ImageIO.createImageOutputStream(out.toFile()));
-					writer.write(null, new IIOImage(resizedImage, null, null), param);
-					output.add(out);
+			private void submitAhead()
+			{
+				while (submitted >= 0 && pending.size() < workers * LOOK_AHEAD_PER_WORKER) {
+					int page0 = submitted;
+					submitted = selected.nextSetBit(submitted + 1);
+					pending.add(executor.submit(() -> {
+						if (cancelled.get()) {
+							return null;
+						}
+						return useCairo ?
+							renderPageCairo(inputFile, page0, format, useCairo && scale != null ? cairoWidth(geometry.get(page0), scale) : null, quality) :
+							renderPageJava(pdfFiles, inputFile, documents, page0, format, scale, quality);
+					}));
 				}
 			}
+		};
+	}
 
-			return new CloseableIterator<Path>()
-			{
-				Iterator<Path> sub = output.iterator();
+	private static Integer cairoWidth(PdfPageScanner.PageGeometry page, Double scale)
+	{
+		return Math.round(page.rotatedWidth() * IMAGE_SCALE * scale.floatValue());
+	}
 
-				@Override
-				public void close() throws IOException
-				{
-					FileUtils.deleteDirectory(tmp.toFile());
-				}
+	private static byte[] renderPageCairo(Path inputFile, int page0, String format, Integer targetWidth, Float quality) throws IOException
+	{
+		ImmutableList.Builder<String> args = ImmutableList.<String>builder()
+			.add("pdftocairo")
+			.add("-" + format)
+			.add("-singlefile")
+			.add("-f").add(Integer.toString(page0 + 1))
+			.add("-l").add(Integer.toString(page0 + 1));
+		if (format.equals("jpeg") && quality != null) {
+			args.add("-jpegopt").add("quality=" + Math.round(quality * 100));
+		}
+		if (targetWidth != null) {
+			args.add("-scale-to-x").add(Integer.toString(targetWidth));
+		}
+		args.add(inputFile.toString());
+		args.add("-");
+		try {
+			Process process = new ProcessBuilder(args.build())
+				.redirectError(ProcessBuilder.Redirect.INHERIT)
+				.start();
+			byte[] data;
+			try (InputStream output = process.getInputStream()) {
+				data = output.readAllBytes();
+			}
+			int exit = process.waitFor();
+			if (exit != 0) {
+				throw new IOException("Failed to execute " + Strings.join(args.build(), ' ') + ": exit=" + exit);
+			}
+			log.info("Rendered page: page={} size={}", page0, data.length);
+			return data;
+		}
+		catch (InterruptedException e) {
+			throw new IOException("Failed to wait for pdftocairo", e);
+		}
+	}
 
-				@Override
-				public boolean hasNext()
-				{
-					return sub.hasNext();
-				}
+	private static byte[] renderPageJava(PdfFiles pdfFiles, Path inputFile, Queue<PDDocument> documents, int page0, String format, Double scale, Float quality) throws IOException
+	{
+		PDDocument pageDocument = documents.poll();
+		if (pageDocument == null) {
+			pageDocument = pdfFiles.load(inputFile);
+		}
+		try {
+			BufferedImage image = new PDFRenderer(pageDocument).renderImage(page0, IMAGE_SCALE);
+			float targetWidth = image.getWidth();
+			float targetHeight = image.getHeight();
 
-				@Override
-				public Path next()
-				{
-					return sub.next();
-				}
-			};
+			final BufferedImage resizedImage;
+			if (scale == null || scale == 1.0) {
+				resizedImage = image;
+			} else {
+				resizedImage = new BufferedImage((int) targetWidth, (int) targetHeight, BufferedImage.TYPE_INT_RGB);
+
+				Graphics2D g = resizedImage.createGraphics();
+				g.setComposite(AlphaComposite.Src);
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				g.drawImage(image, 0, 0, (int) targetWidth, (int) targetHeight, null);
+				g.dispose();
+			}
+
+			ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(quality);
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			try (ImageOutputStream stream = ImageIO.createImageOutputStream(data)) {
+				writer.setOutput(stream);
+				writer.write(null, new IIOImage(resizedImage, null, null), param);
+			}
+			finally {
+				writer.dispose();
+			}
+			log.info("Rendered page: page={} size={}", page0, data.size());
+			return data.toByteArray();
 		}
-		catch (Throwable ex) {
-			FileUtils.deleteDirectory(tmp.toFile());
-			throw ex;
+		finally {
+			documents.add(pageDocument);
 		}
 	}
 
@@ -369,4 +548,16 @@ public class PdfRenderer implements AutoCloseable
 	public void close()
 	{
 	}
+
+	@FunctionalInterface
+	public interface PageStamper
+	{
+		/**
+		 * Stamps single page.
+		 *
+		 * @param index
+		 * 	index of page relative to start of stamped range
+		 */
+		void stamp(int index, PDPage page, PDPageContentStream contentStream) throws IOException;
+	}
 }
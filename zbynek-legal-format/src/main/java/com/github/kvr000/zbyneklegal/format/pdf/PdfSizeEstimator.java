@@ -0,0 +1,124 @@
+package com.github.kvr000.zbyneklegal.format.pdf;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Estimates serialized size of pages without saving the document.
+ *
+ * Each page costs its own objects plus all indirect objects it references (content streams, fonts, images, ...).
+ * Objects already counted by this estimator are shared and do not count again, so single instance is meant to
+ * estimate single output part.
+ */
+public class PdfSizeEstimator
+{
+	/** Trailer, catalog, page tree and xref header. */
+	public static final long DOCUMENT_OVERHEAD = 1024;
+
+	/** "n g obj" ... "endobj" plus xref entry. */
+	public static final long INDIRECT_OVERHEAD = 40;
+
+	private final Set<COSBase> included = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Estimates incremental cost of adding the page to current part and marks its objects as included.
+	 *
+	 * @param page
+	 * 	page to add
+	 *
+	 * @return
+	 * 	number of bytes the page adds to output
+	 */
+	public long addPage(PDPage page)
+	{
+		COSDictionary pageDict = page.getCOSObject();
+		long total = 0;
+		Deque<COSBase> pending = new ArrayDeque<>();
+		pending.add(pageDict);
+		if (!pageDict.containsKey(COSName.RESOURCES) && page.getResources() != null) {
+			// inherited from page tree, gets copied into the page when cloned
+			pending.add(page.getResources().getCOSObject());
+		}
+		while (!pending.isEmpty()) {
+			COSBase object = pending.pop();
+			if (object != pageDict && object instanceof COSDictionary dict && COSName.PAGE.equals(dict.getItem(COSName.TYPE))) {
+				// links to other pages, these are accounted separately
+				continue;
+			}
+			if (!included.add(object)) {
+				continue;
+			}
+			List<COSBase> references = new ArrayList<>();
+			total += INDIRECT_OVERHEAD + estimateDirect(object, references);
+			pending.addAll(references);
+		}
+		return total;
+	}
+
+	private static long estimateDirect(COSBase object, List<COSBase> references)
+	{
+		if (object instanceof COSObject reference) {
+			COSBase target = reference.getObject();
+			if (target != null) {
+				references.add(target);
+			}
+			return 12;
+		}
+		else if (object instanceof COSDictionary dict) {
+			long size = 6;
+			for (Map.Entry<COSName, COSBase> entry: dict.entrySet()) {
+				if (COSName.PARENT.equals(entry.getKey()) || COSName.P.equals(entry.getKey())) {
+					size += entry.getKey().getName().length() + 14;
+					continue;
+				}
+				size += entry.getKey().getName().length() + 2 + estimateDirect(entry.getValue(), references);
+			}
+			if (dict instanceof COSStream stream) {
+				size += stream.getLength() + 20;
+			}
+			return size;
+		}
+		else if (object instanceof COSArray array) {
+			long size = 2;
+			for (COSBase item: array) {
+				size += 1 + estimateDirect(item, references);
+			}
+			return size;
+		}
+		else if (object instanceof COSName name) {
+			return name.getName().length() + 1;
+		}
+		else if (object instanceof COSString string) {
+			return string.getBytes().length + 2;
+		}
+		else if (object instanceof COSNumber) {
+			return 8;
+		}
+		else if (object instanceof COSBoolean) {
+			return 5;
+		}
+		else if (object instanceof COSNull || object == null) {
+			return 4;
+		}
+		return 16;
+	}
+}
@@ -0,0 +1,122 @@
+package com.github.kvr000.zbyneklegal.format.pdf;
+
+import com.google.common.primitives.Ints;
+import lombok.extern.log4j.Log4j2;
+import net.dryuf.base.function.ThrowingConsumer;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.List;
+
+
+/**
+ * On-disk cache of stamped exhibits.
+ *
+ * Entries are addressed by SHA256 of the input content and all parameters affecting the stamp, so renumbered or
+ * modified exhibits simply miss and stale entries are never returned.  The directory can be wiped at any time.
+ */
+@Log4j2
+public class StampedExhibitCache
+{
+	/** Increase when stamping output changes, so entries from older versions are not reused. */
+	private static final String VERSION = "3";
+
+	private final PdfFiles pdfFiles;
+
+	private final Path directory;
+
+	public StampedExhibitCache(PdfFiles pdfFiles, Path directory) throws IOException
+	{
+		this.pdfFiles = pdfFiles;
+		this.directory = Files.createDirectories(directory);
+	}
+
+	/**
+	 * Loads stamped exhibit from cache, stamping and storing it on miss.
+	 *
+	 * @param input
+	 * 	original exhibit file
+	 * @param parameters
+	 * 	all values affecting the stamp, such as exhibit id, first page and stamp text
+	 * @param stamper
+	 * 	stamps the loaded original document in place
+	 *
+	 * @return
+	 * 	stamped document, owned by caller
+	 */
+	public PDDocument loadOrStamp(Path input, List<?> parameters, ThrowingConsumer<PDDocument, IOException> stamper) throws IOException
+	{
+		String key = computeKey(input, parameters);
+		Path cached = directory.resolve(key.substring(0, 2)).resolve(key + ".pdf");
+		if (Files.exists(cached)) {
+			log.debug("Stamp cache hit: file={} key={}", input, key);
+		}
+		else {
+			log.debug("Stamp cache miss: file={} key={}", input, key);
+			Files.createDirectories(cached.getParent());
+			Path tmp = Files.createTempFile(cached.getParent(), ".tmp-", ".pdf");
+			try {
+				try (PDDocument doc = pdfFiles.load(input)) {
+					stamper.accept(doc);
+					doc.save(tmp.toFile());
+				}
+				Files.move(tmp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				Files.deleteIfExists(tmp);
+			}
+		}
+		return pdfFiles.load(cached);
+	}
+
+	/**
+	 * Computes checksum of the stamp parameters, encoded the same way as in the cache key.
+	 *
+	 * @param parameters
+	 * 	all values affecting the stamp, as passed to {@link #loadOrStamp(Path, List, ThrowingConsumer)}
+	 *
+	 * @return
+	 * 	hex encoded SHA256
+	 */
+	public static String parametersChecksum(List<?> parameters)
+	{
+		MessageDigest digest = DigestUtils.getSha256Digest();
+		digest.update((VERSION + "\0").getBytes(StandardCharsets.UTF_8));
+		updateParameters(digest, parameters);
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	private static String computeKey(Path input, List<?> parameters) throws IOException
+	{
+		MessageDigest digest = DigestUtils.getSha256Digest();
+		digest.update((VERSION + "\0").getBytes(StandardCharsets.UTF_8));
+		try (InputStream stream = Files.newInputStream(input)) {
+			digest.update(DigestUtils.sha256(stream));
+		}
+		updateParameters(digest, parameters);
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	private static void updateParameters(MessageDigest digest, List<?> parameters)
+	{
+		digest.update(Ints.toByteArray(parameters.size()));
+		for (Object parameter: parameters) {
+			// length prefixed, so no separator inside the value can shift the parameters, null has negative length
+			if (parameter == null) {
+				digest.update(Ints.toByteArray(-1));
+				continue;
+			}
+			byte[] value = parameter.toString().getBytes(StandardCharsets.UTF_8);
+			digest.update(Ints.toByteArray(value.length));
+			digest.update(value);
+		}
+	}
+}
@@ -0,0 +1,313 @@
+package com.github.kvr000.zbyneklegal.format.pdf;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Writes PDF sequentially, without building the output document in memory.
+ *
+ * Objects of each appended document are renumbered and written immediately, so the source can be closed as soon as
+ * {@link #appendDocument(PDDocument)} returns.  Page tree, catalog and xref are written by {@link #close()}.
+ *
+ * Only pages and objects reachable from them are copied, document level structures (outlines, forms, names) are not.
+ */
+public class StreamingPdfWriter implements Closeable
+{
+	private static final List<COSName> INHERITABLE = List.of(COSName.RESOURCES, COSName.MEDIA_BOX, COSName.CROP_BOX, COSName.ROTATE);
+
+	private final CountingOutputStream output;
+
+	/** Offsets of objects, index is object number - 1. */
+	private final List<Long> offsets = new ArrayList<>();
+
+	private final List<Integer> pages = new ArrayList<>();
+
+	private final int pagesRoot;
+
+	public StreamingPdfWriter(OutputStream output) throws IOException
+	{
+		this.output = new CountingOutputStream(new BufferedOutputStream(output));
+		this.output.write("%PDF-1.7\n%\u00e2\u00e3\u00cf\u00d3\n".getBytes(StandardCharsets.ISO_8859_1));
+		this.pagesRoot = allocate();
+	}
+
+	public int getNumberOfPages()
+	{
+		return pages.size();
+	}
+
+	/**
+	 * Appends all pages of the document to output.
+	 *
+	 * @param doc
+	 * 	source document, not referenced after the method returns
+	 */
+	public void appendDocument(PDDocument doc) throws IOException
+	{
+		Map<COSBase, Integer> numbers = new IdentityHashMap<>();
+		List<COSDictionary> docPages = new ArrayList<>(doc.getNumberOfPages());
+		for (PDPage page: doc.getPages()) {
+			int number = allocate();
+			numbers.put(page.getCOSObject(), number);
+			docPages.add(page.getCOSObject());
+		}
+		Deque<COSBase> pending = new ArrayDeque<>();
+		for (COSDictionary page: docPages) {
+			int number = numbers.get(page);
+			beginObject(number);
+			writePage(page, numbers, pending);
+			endObject();
+			pages.add(number);
+			while (!pending.isEmpty()) {
+				COSBase object = pending.pop();
+				beginObject(numbers.get(object));
+				if (object instanceof COSStream stream) {
+					int lengthNumber = allocate();
+					long length = writeStream(stream, lengthNumber, numbers, pending);
+					endObject();
+					beginObject(lengthNumber);
+					write(String.valueOf(length));
+				}
+				else {
+					writeDirect(object, numbers, pending, Collections.newSetFromMap(new IdentityHashMap<>()));
+				}
+				endObject();
+			}
+		}
+	}
+
+	/**
+	 * Writes page tree, catalog, xref and trailer and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try (output) {
+			beginObject(pagesRoot);
+			write("<< /Type /Pages /Kids [");
+			for (int page: pages) {
+				write(" " + page + " 0 R");
+			}
+			write(" ] /Count " + pages.size() + " >>");
+			endObject();
+
+			int catalog = allocate();
+			beginObject(catalog);
+			write("<< /Type /Catalog /Pages " + pagesRoot + " 0 R >>");
+			endObject();
+
+			long xref = output.getByteCount();
+			write("xref\n0 " + (offsets.size() + 1) + "\n0000000000 65535 f \n");
+			for (long offset: offsets) {
+				write(String.format("%010d 00000 n \n", offset));
+			}
+			write("trailer\n<< /Size " + (offsets.size() + 1) + " /Root " + catalog + " 0 R >>\n");
+			write("startxref\n" + xref + "\n%%EOF\n");
+		}
+	}
+
+	private int allocate()
+	{
+		offsets.add(-1L);
+		return offsets.size();
+	}
+
+	private void beginObject(int number) throws IOException
+	{
+		offsets.set(number - 1, output.getByteCount());
+		write(number + " 0 obj\n");
+	}
+
+	private void endObject() throws IOException
+	{
+		write("\nendobj\n");
+	}
+
+	private void writePage(COSDictionary page, Map<COSBase, Integer> numbers, Deque<COSBase> pending) throws IOException
+	{
+		Set<COSBase> ancestors = Collections.newSetFromMap(new IdentityHashMap<>());
+		ancestors.add(page);
+		write("<<");
+		for (Map.Entry<COSName, COSBase> entry: page.entrySet()) {
+			if (COSName.PARENT.equals(entry.getKey())) {
+				continue;
+			}
+			writeEntry(entry.getKey(), entry.getValue(), numbers, pending, ancestors);
+		}
+		for (COSName key: INHERITABLE) {
+			if (!page.containsKey(key)) {
+				COSBase inherited = findInherited(page, key);
+				if (inherited != null) {
+					writeEntry(key, inherited, numbers, pending, ancestors);
+				}
+			}
+		}
+		write(" /Parent " + pagesRoot + " 0 R >>");
+	}
+
+	/**
+	 * Writes stream object.  The length is written as reference to lengthNumber object, to be written by caller
+	 * after this object, as the source /Length may not match the raw data actually copied.
+	 *
+	 * @return
+	 * 	number of bytes of raw stream data written
+	 */
+	private long writeStream(COSStream stream, int lengthNumber, Map<COSBase, Integer> numbers, Deque<COSBase> pending) throws IOException
+	{
+		Set<COSBase> ancestors = Collections.newSetFromMap(new IdentityHashMap<>());
+		ancestors.add(stream);
+		write("<<");
+		for (Map.Entry<COSName, COSBase> entry: stream.entrySet()) {
+			if (COSName.LENGTH.equals(entry.getKey())) {
+				continue;
+			}
+			writeEntry(entry.getKey(), entry.getValue(), numbers, pending, ancestors);
+		}
+		write(" /Length " + lengthNumber + " 0 R >>\nstream\n");
+		long start = output.getByteCount();
+		try (InputStream raw = stream.createRawInputStream()) {
+			raw.transferTo(output);
+		}
+		long length = output.getByteCount() - start;
+		write("\nendstream");
+		return length;
+	}
+
+	private void writeEntry(COSName key, COSBase value, Map<COSBase, Integer> numbers, Deque<COSBase> pending, Set<COSBase> ancestors) throws IOException
+	{
+		if (value == null) {
+			return;
+		}
+		write(" ");
+		key.writePDF(output);
+		write(" ");
+		writeValue(value, numbers, pending, ancestors);
+	}
+
+	private void writeValue(COSBase value, Map<COSBase, Integer> numbers, Deque<COSBase> pending, Set<COSBase> ancestors) throws IOException
+	{
+		if (value instanceof COSObject reference) {
+			writeReference(reference.getObject(), numbers, pending);
+		}
+		else if (value instanceof COSStream
+			|| (value instanceof COSDictionary || value instanceof COSArray) && (numbers.containsKey(value) || ancestors.contains(value)))
+		{
+			writeReference(value, numbers, pending);
+		}
+		else {
+			writeDirect(value, numbers, pending, ancestors);
+		}
+	}
+
+	private void writeReference(COSBase target, Map<COSBase, Integer> numbers, Deque<COSBase> pending) throws IOException
+	{
+		if (target == null || target instanceof COSNull || isPageTreeNode(target)) {
+			// page tree of source document is replaced by our own
+			write("null");
+			return;
+		}
+		Integer number = numbers.get(target);
+		if (number == null) {
+			number = allocate();
+			numbers.put(target, number);
+			pending.add(target);
+		}
+		write(number + " 0 R");
+	}
+
+	private void writeDirect(COSBase value, Map<COSBase, Integer> numbers, Deque<COSBase> pending, Set<COSBase> ancestors) throws IOException
+	{
+		if (value instanceof COSDictionary dict) {
+			ancestors.add(dict);
+			write("<<");
+			for (Map.Entry<COSName, COSBase> entry: dict.entrySet()) {
+				writeEntry(entry.getKey(), entry.getValue(), numbers, pending, ancestors);
+			}
+			write(" >>");
+			ancestors.remove(dict);
+		}
+		else if (value instanceof COSArray array) {
+			ancestors.add(array);
+			write("[");
+			for (COSBase item: array) {
+				write(" ");
+				writeValue(item == null ? COSNull.NULL : item, numbers, pending, ancestors);
+			}
+			write(" ]");
+			ancestors.remove(array);
+		}
+		else if (value instanceof COSString string) {
+			COSWriter.writeString(string, output);
+		}
+		else if (value instanceof COSName name) {
+			name.writePDF(output);
+		}
+		else if (value instanceof COSInteger number) {
+			number.writePDF(output);
+		}
+		else if (value instanceof COSFloat number) {
+			number.writePDF(output);
+		}
+		else if (value instanceof COSBoolean bool) {
+			bool.writePDF(output);
+		}
+		else if (value instanceof COSObject reference) {
+			writeReference(reference.getObject(), numbers, pending);
+		}
+		else {
+			write("null");
+		}
+	}
+
+	private static boolean isPageTreeNode(COSBase object)
+	{
+		return object instanceof COSDictionary dict && COSName.PAGES.equals(dict.getCOSName(COSName.TYPE));
+	}
+
+	private static COSBase findInherited(COSDictionary page, COSName key)
+	{
+		COSDictionary node = page.getCOSDictionary(COSName.PARENT);
+		for (int depth = 0; node != null && depth < 256; ++depth) {
+			COSBase value = node.getItem(key);
+			if (value != null) {
+				return value;
+			}
+			node = node.getCOSDictionary(COSName.PARENT);
+		}
+		return null;
+	}
+
+	private void write(String text) throws IOException
+	{
+		output.write(text.getBytes(StandardCharsets.ISO_8859_1));
+	}
+}
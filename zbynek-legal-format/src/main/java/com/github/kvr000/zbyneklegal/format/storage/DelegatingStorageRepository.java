@@ -3,6 +3,10 @@ package com.github.kvr000.zbyneklegal.format.storage;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
@@ -27,12 +31,40 @@ public class DelegatingStorageRepository implements StorageRepository
         return findRepository(url).downloadFile(url);
     }
 
+    @Override
+    public InputStream downloadFile(String url, long offset) throws IOException
+    {
+        return findRepository(url).downloadFile(url, offset);
+    }
+
     @Override
     public Map<String, String> metadata(String url) throws IOException
     {
         return findRepository(url).metadata(url);
     }
 
+    /**
+     * Gets metadata, passing urls of each repository in single call.
+     */
+    @Override
+    public MetadataBatch metadata(Collection<String> urls)
+    {
+        MetadataBatch result = new MetadataBatch();
+        Map<StorageRepository, List<String>> byRepository = new LinkedHashMap<>();
+        for (String url: urls) {
+            try {
+                byRepository.computeIfAbsent(findRepository(url), key -> new ArrayList<>()).add(url);
+            }
+            catch (IOException ex) {
+                result.putFailure(url, ex);
+            }
+        }
+        for (Map.Entry<StorageRepository, List<String>> entry: byRepository.entrySet()) {
+            result.putAll(entry.getKey().metadata(entry.getValue()));
+        }
+        return result;
+    }
+
     private StorageRepository findRepository(String url) throws IOException
     {
         Matcher urlMatch = URL_PREFIX_PATTERN.matcher(url);
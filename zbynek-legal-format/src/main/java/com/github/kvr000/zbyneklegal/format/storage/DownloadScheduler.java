@@ -0,0 +1,242 @@
+package com.github.kvr000.zbyneklegal.format.storage;
+
+import lombok.extern.log4j.Log4j2;
+import net.dryuf.base.function.ThrowingCallable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Runs downloads with limited concurrency, in total and per host.  Smaller files are started first, failed downloads
+ * are retried with exponential backoff.  Aggregate throughput is logged as downloads complete.
+ */
+@Log4j2
+public class DownloadScheduler implements Closeable
+{
+    private static final Comparator<Task> TASK_ORDER = Comparator.<Task>comparingLong(task -> task.size)
+            .thenComparingLong(task -> task.sequence);
+
+    private final int concurrency;
+
+    private final int hostConcurrency;
+
+    private final int retries;
+
+    private final Duration backoff;
+
+    private final ExecutorService executor;
+
+    private final ScheduledExecutorService timer;
+
+    private final long started = System.nanoTime();
+
+    private final AtomicLong downloadedBytes = new AtomicLong();
+
+    private final List<CompletableFuture<Long>> futures = new ArrayList<>();
+
+    /** Guarded by this. */
+    private final TreeSet<Task> queue = new TreeSet<>(TASK_ORDER);
+
+    /** Guarded by this. */
+    private final Map<String, Integer> hostRunning = new HashMap<>();
+
+    /** Guarded by this. */
+    private int running;
+
+    /** Guarded by this. */
+    private long sequence;
+
+    /** Guarded by this. */
+    private int completed;
+
+    /**
+     * Creates scheduler.
+     *
+     * @param concurrency
+     * 	maximum number of downloads in total
+     * @param hostConcurrency
+     * 	maximum number of downloads from single host
+     * @param retries
+     * 	number of retries after failure
+     * @param backoff
+     * 	delay before first retry, doubled with each following
+     */
+    public DownloadScheduler(int concurrency, int hostConcurrency, int retries, Duration backoff)
+    {
+        this.concurrency = concurrency;
+        this.hostConcurrency = hostConcurrency;
+        this.retries = retries;
+        this.backoff = backoff;
+        this.executor = Executors.newFixedThreadPool(concurrency);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "download-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules download.
+     *
+     * @param url
+     * 	source url, used for per host limit and logging
+     * @param size
+     * 	expected size, Long.MAX_VALUE if unknown
+     * @param download
+     * 	download function, returning number of bytes downloaded
+     *
+     * @return
+     * 	future completed with downloaded size, or failure after last retry
+     */
+    public CompletableFuture<Long> submit(String url, long size, ThrowingCallable<Long, IOException> download)
+    {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        synchronized (this) {
+            queue.add(new Task(url, hostOf(url), size, sequence++, download, future));
+            futures.add(future);
+        }
+        dispatch();
+        return future;
+    }
+
+    /**
+     * Waits for all downloads to finish.
+     */
+    @Override
+    public void close()
+    {
+        try {
+            List<CompletableFuture<Long>> all;
+            synchronized (this) {
+                all = new ArrayList<>(futures);
+            }
+            CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0]))
+                    .exceptionally(ex -> null)
+                    .join();
+            long failed = all.stream().filter(CompletableFuture::isCompletedExceptionally).count();
+            log.info("Downloaded files: count={} failed={} size={} rate={}/s",
+                    all.size() - failed, failed, downloadedBytes.get(), rate());
+        }
+        finally {
+            executor.shutdownNow();
+            timer.shutdownNow();
+        }
+    }
+
+    private synchronized void dispatch()
+    {
+        long now = System.nanoTime();
+        for (Iterator<Task> it = queue.iterator(); running < concurrency && it.hasNext(); ) {
+            Task task = it.next();
+            if (task.notBefore - now > 0 || hostRunning.getOrDefault(task.host, 0) >= hostConcurrency) {
+                continue;
+            }
+            it.remove();
+            ++running;
+            hostRunning.merge(task.host, 1, Integer::sum);
+            executor.execute(() -> run(task));
+        }
+    }
+
+    private void run(Task task)
+    {
+        try {
+            long size = task.download.call();
+            long total = downloadedBytes.addAndGet(size);
+            int done, count;
+            synchronized (this) {
+                done = ++completed;
+                count = futures.size();
+            }
+            log.info("Downloaded: url={} size={} completed={}/{} total={} rate={}/s",
+                    task.url, size, done, count, total, rate());
+            task.future.complete(size);
+        }
+        catch (Throwable ex) {
+            if (task.attempt < retries) {
+                long delay = backoff.toMillis() << task.attempt;
+                delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+                ++task.attempt;
+                log.warn("Download failed, retrying in {} ms: attempt={} url={}: {}", delay, task.attempt, task.url, ex.toString());
+                task.notBefore = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                synchronized (this) {
+                    queue.add(task);
+                }
+                timer.schedule(this::dispatch, delay, TimeUnit.MILLISECONDS);
+            }
+            else {
+                task.future.completeExceptionally(ex);
+            }
+        }
+        finally {
+            synchronized (this) {
+                --running;
+                hostRunning.merge(task.host, -1, Integer::sum);
+            }
+            dispatch();
+        }
+    }
+
+    private long rate()
+    {
+        long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return downloadedBytes.get() * 1000 / elapsed;
+    }
+
+    private static String hostOf(String url)
+    {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host;
+        }
+        catch (IllegalArgumentException ex) {
+            return "";
+        }
+    }
+
+    private static class Task
+    {
+        final String url;
+
+        final String host;
+
+        final long size;
+
+        final long sequence;
+
+        final ThrowingCallable<Long, IOException> download;
+
+        final CompletableFuture<Long> future;
+
+        int attempt;
+
+        long notBefore = System.nanoTime();
+
+        Task(String url, String host, long size, long sequence, ThrowingCallable<Long, IOException> download, CompletableFuture<Long> future)
+        {
+            this.url = url;
+            this.host = host;
+            this.size = size;
+            this.sequence = sequence;
+            this.download = download;
+            this.future = future;
+        }
+    }
+}
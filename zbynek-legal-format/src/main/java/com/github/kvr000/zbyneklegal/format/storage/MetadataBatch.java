@@ -0,0 +1,68 @@
+package com.github.kvr000.zbyneklegal.format.storage;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Result of metadata query for multiple files.  Failures are kept per url, so single failing file does not prevent
+ * processing the others.
+ */
+public class MetadataBatch
+{
+    private final Map<String, Map<String, String>> metadata = new LinkedHashMap<>();
+
+    private final Map<String, IOException> failures = new LinkedHashMap<>();
+
+    public void putMetadata(String url, Map<String, String> metadata)
+    {
+        this.metadata.put(url, metadata);
+    }
+
+    public void putFailure(String url, IOException failure)
+    {
+        failures.put(url, failure);
+    }
+
+    public void putAll(MetadataBatch other)
+    {
+        metadata.putAll(other.metadata);
+        failures.putAll(other.failures);
+    }
+
+    /**
+     * Gets metadata of the file.
+     *
+     * @return
+     * 	metadata of the file, null if the file does not exist
+     *
+     * @throws IOException
+     * 	if the query for this file failed
+     */
+    public Map<String, String> get(String url) throws IOException
+    {
+        IOException failure = failures.get(url);
+        if (failure != null) {
+            throw new IOException("Failed to get metadata: " + url, failure);
+        }
+        return metadata.get(url);
+    }
+
+    /**
+     * Gets metadata of existing files.
+     */
+    public Map<String, Map<String, String>> getMetadata()
+    {
+        return Collections.unmodifiableMap(metadata);
+    }
+
+    /**
+     * Gets failures by url.
+     */
+    public Map<String, IOException> getFailures()
+    {
+        return Collections.unmodifiableMap(failures);
+    }
+}
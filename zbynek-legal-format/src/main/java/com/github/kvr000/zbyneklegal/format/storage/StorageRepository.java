@@ -2,6 +2,7 @@ package com.github.kvr000.zbyneklegal.format.storage;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
 import java.util.Map;
 
 
@@ -9,5 +10,49 @@ public interface StorageRepository
 {
     public Map<String, String> metadata(String url) throws IOException;
 
+    /**
+     * Gets metadata of multiple files at once.  Implementations should override it when the storage supports batch
+     * requests, the default queries files one by one.
+     *
+     * @return
+     * 	metadata by url, files which do not exist are missing, failures are recorded per url
+     */
+    public default MetadataBatch metadata(Collection<String> urls)
+    {
+        MetadataBatch result = new MetadataBatch();
+        for (String url: urls) {
+            try {
+                Map<String, String> metadata = metadata(url);
+                if (metadata != null) {
+                    result.putMetadata(url, metadata);
+                }
+            }
+            catch (IOException ex) {
+                result.putFailure(url, ex);
+            }
+            catch (RuntimeException ex) {
+                result.putFailure(url, new IOException(ex));
+            }
+        }
+        return result;
+    }
+
     public InputStream downloadFile(String url) throws IOException;
+
+    /**
+     * Downloads file content starting at offset.  Implementations should override it when the storage supports ranged
+     * reads, the default downloads from the beginning and skips the data.
+     */
+    public default InputStream downloadFile(String url, long offset) throws IOException
+    {
+        InputStream input = downloadFile(url);
+        try {
+            input.skipNBytes(offset);
+        }
+        catch (IOException ex) {
+            input.close();
+            throw ex;
+        }
+        return input;
+    }
 }
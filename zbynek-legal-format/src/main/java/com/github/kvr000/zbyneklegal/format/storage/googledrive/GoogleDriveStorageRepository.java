@@ -4,23 +4,35 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.github.kvr000.zbyneklegal.format.storage.MetadataBatch;
 import com.github.kvr000.zbyneklegal.format.storage.StorageRepository;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
@@ -58,6 +70,11 @@ public class GoogleDriveStorageRepository implements StorageRepository
 
     private static final String CREDENTIALS_FILE_PATH = SystemUtils.getUserHome().getPath() + "/.local/google.com/credentials/oauth-fileaccess.json";
 
+    private static final String METADATA_FIELDS = "name,fileExtension,md5Checksum,size";
+
+    /** Maximum number of requests in single batch, as limited by Drive API. */
+    private static final int BATCH_SIZE = 100;
+
     private final NetHttpTransport HTTP_TRANSPORT;
     private final Drive service;
 
@@ -83,21 +100,114 @@ public class GoogleDriveStorageRepository implements StorageRepository
         return service.files().get(getFileId(url)).executeMediaAsInputStream();
     }
 
+    @Override
+    public InputStream downloadFile(String url, long offset) throws IOException
+    {
+        if (offset == 0) {
+            return downloadFile(url);
+        }
+        Drive.Files.Get request = service.files().get(getFileId(url));
+        request.getRequestHeaders().setRange("bytes=" + offset + "-");
+        HttpResponse response = request.executeMedia();
+        InputStream content = response.getContent();
+        if (response.getStatusCode() != HttpURLConnection.HTTP_PARTIAL) {
+            // range ignored, full content returned
+            try {
+                content.skipNBytes(offset);
+            }
+            catch (IOException ex) {
+                response.disconnect();
+                throw ex;
+            }
+        }
+        return content;
+    }
+
     @Override
     public Map<String, String> metadata(String url) throws IOException
     {
         File result = service.files().get(getFileId(url))
-                .setFields("name,fileExtension,md5Checksum")
+                .setFields(METADATA_FIELDS)
                 .execute();
 
         if (result == null) {
             return null;
         }
 
+        return toMetadata(result);
+    }
+
+    /**
+     * Gets metadata using batch requests, up to {@link #BATCH_SIZE} files per round trip.  Failures are recorded per
+     * url, failure of whole batch request is recorded for all its urls.
+     */
+    @Override
+    public MetadataBatch metadata(Collection<String> urls)
+    {
+        MetadataBatch result = new MetadataBatch();
+        List<String> list = new ArrayList<>(urls);
+        for (int start = 0; start < list.size(); start += BATCH_SIZE) {
+            BatchRequest batch = service.batch();
+            List<String> queued = new ArrayList<>();
+            Set<String> completed = new HashSet<>();
+            for (String url: list.subList(start, Math.min(start + BATCH_SIZE, list.size()))) {
+                try {
+                    service.files().get(getFileId(url))
+                            .setFields(METADATA_FIELDS)
+                            .queue(batch, new JsonBatchCallback<File>()
+                            {
+                                @Override
+                                public void onSuccess(File file, HttpHeaders responseHeaders)
+                                {
+                                    completed.add(url);
+                                    try {
+                                        result.putMetadata(url, toMetadata(file));
+                                    }
+                                    catch (IOException ex) {
+                                        result.putFailure(url, ex);
+                                    }
+                                }
+
+                                @Override
+                                public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders)
+                                {
+                                    completed.add(url);
+                                    if (error.getCode() != 404) {
+                                        result.putFailure(url, new IOException(error.getCode() + " " + error.getMessage()));
+                                    }
+                                }
+                            });
+                    queued.add(url);
+                }
+                catch (IOException ex) {
+                    result.putFailure(url, ex);
+                }
+            }
+            if (queued.isEmpty()) {
+                continue;
+            }
+            try {
+                batch.execute();
+            }
+            catch (IOException ex) {
+                queued.stream()
+                        .filter(url -> !completed.contains(url))
+                        .forEach(url -> result.putFailure(url, ex));
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, String> toMetadata(File file) throws IOException
+    {
+        if (file.getMd5Checksum() == null) {
+            throw new IOException("File has no content checksum, possibly native Google document: " + file.getName());
+        }
         return ImmutableMap.of(
-                "filename", result.getName(),
-                "fileExtension", result.getFileExtension(),
-                "md5", result.getMd5Checksum()
+                "filename", file.getName(),
+                "fileExtension", Objects.toString(file.getFileExtension(), ""),
+                "md5", file.getMd5Checksum(),
+                "size", Objects.toString(file.getSize(), "")
         );
     }
 
@@ -0,0 +1,81 @@
+package com.github.kvr000.zbyneklegal.format.storage.local;
+
+import com.github.kvr000.zbyneklegal.format.file.FileChecksums;
+import com.github.kvr000.zbyneklegal.format.storage.StorageRepository;
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+
+/**
+ * Repository serving local files, in form of {@code file://localhost/absolute/path}.  Provides the same metadata as
+ * remote repositories, so it can stand in for them in offline testing or for mounted network drives.
+ */
+public class LocalStorageRepository implements StorageRepository
+{
+    public static final Pattern URL_PATTERN = Pattern.compile("^file://localhost/.*$");
+
+    private final FileChecksums fileChecksums;
+
+    public LocalStorageRepository(FileChecksums fileChecksums)
+    {
+        this.fileChecksums = fileChecksums;
+    }
+
+    @Override
+    public InputStream downloadFile(String url) throws IOException
+    {
+        return Files.newInputStream(getPath(url));
+    }
+
+    @Override
+    public InputStream downloadFile(String url, long offset) throws IOException
+    {
+        FileChannel channel = FileChannel.open(getPath(url), StandardOpenOption.READ);
+        try {
+            return Channels.newInputStream(channel.position(offset));
+        }
+        catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Map<String, String> metadata(String url) throws IOException
+    {
+        Path path = getPath(url);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        return ImmutableMap.of(
+                "filename", path.getFileName().toString(),
+                "fileExtension", FilenameUtils.getExtension(path.getFileName().toString()),
+                "md5", fileChecksums.checksum(path).md5(),
+                "size", String.valueOf(Files.size(path))
+        );
+    }
+
+    private Path getPath(String url) throws IOException
+    {
+        if (!URL_PATTERN.matcher(url).matches()) {
+            throw new IOException("Unrecognized URL for local storage, expecting " + URL_PATTERN.pattern() + " got: " + url);
+        }
+        try {
+            return Path.of(URI.create(url).getPath());
+        }
+        catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid local file URL: " + url, ex);
+        }
+    }
+}
@@ -23,6 +23,11 @@ public abstract class AbstractTableUpdator implements TableUpdator
 
     public abstract Map<String, Map<String, String>> listEntries();
 
+    public ColumnarTable listColumns()
+    {
+        return ColumnarTable.fromEntries(headers.keySet(), idColumn, listEntries());
+    }
+
     public abstract void setValue(String id, String key, String value);
 
     public abstract void save() throws IOException;
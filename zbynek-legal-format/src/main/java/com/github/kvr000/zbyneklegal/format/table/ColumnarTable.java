@@ -0,0 +1,300 @@
+package com.github.kvr000.zbyneklegal.format.table;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * Table entries stored by columns.
+ *
+ * Rows are addressed by ordinal, each column is single array of values.  Missing cells are null, so row views contain
+ * the same keys as original records.  Repeated values share single instance.
+ */
+public class ColumnarTable
+{
+    private final String[] names;
+
+    private final Map<String, Integer> nameToColumn;
+
+    private final String[][] columns;
+
+    private final String[] ids;
+
+    private final Map<String, Integer> idToOrdinal;
+
+    private ColumnarTable(String[] names, String[][] columns, String[] ids, Map<String, Integer> idToOrdinal)
+    {
+        this.names = names;
+        ImmutableMap.Builder<String, Integer> nameToColumn = ImmutableMap.builder();
+        for (int i = 0; i < names.length; ++i) {
+            nameToColumn.put(names[i], i);
+        }
+        this.nameToColumn = nameToColumn.buildOrThrow();
+        this.columns = columns;
+        this.ids = ids;
+        this.idToOrdinal = idToOrdinal;
+    }
+
+    /**
+     * Converts entries keyed by id into columns.
+     */
+    public static ColumnarTable fromEntries(Collection<String> columnNames, String idColumn, Map<String, Map<String, String>> entries)
+    {
+        Builder builder = new Builder(columnNames.toArray(new String[0]), idColumn);
+        String[] names = builder.names;
+        for (Map<String, String> entry: entries.values()) {
+            String[] row = new String[names.length];
+            for (int i = 0; i < names.length; ++i) {
+                row[i] = entry.get(names[i]);
+            }
+            builder.addRow(row);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates table from already built columns, used when restoring cached table.
+     */
+    static ColumnarTable fromColumns(String[] names, String[][] columns, String[] ids)
+    {
+        ImmutableMap.Builder<String, Integer> idToOrdinal = ImmutableMap.builderWithExpectedSize(ids.length);
+        for (int i = 0; i < ids.length; ++i) {
+            idToOrdinal.put(ids[i], i);
+        }
+        return new ColumnarTable(names, columns, ids, idToOrdinal.buildOrThrow());
+    }
+
+    String[] getNames()
+    {
+        return names;
+    }
+
+    public int size()
+    {
+        return ids.length;
+    }
+
+    public String getId(int ordinal)
+    {
+        return ids[ordinal];
+    }
+
+    /**
+     * Gets ordinal of row.
+     *
+     * @return
+     * 	ordinal of row or -1 if not found
+     */
+    public int getOrdinal(String id)
+    {
+        Integer ordinal = idToOrdinal.get(id);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Gets column values, indexed by row ordinal.
+     *
+     * @return
+     * 	values of column, null if column does not exist.  The array must not be modified.
+     */
+    public String[] getColumn(String name)
+    {
+        Integer column = nameToColumn.get(name);
+        return column == null ? null : columns[column];
+    }
+
+    public String getValue(int ordinal, String name)
+    {
+        String[] column = getColumn(name);
+        return column == null ? null : column[ordinal];
+    }
+
+    /**
+     * Gets row as map view.
+     */
+    public Map<String, String> getRow(int ordinal)
+    {
+        return new RowView(ordinal);
+    }
+
+    /**
+     * Gets all rows as map of id to row view, in table order.
+     */
+    public Map<String, Map<String, String>> asMap()
+    {
+        ImmutableMap.Builder<String, Map<String, String>> map = ImmutableMap.builderWithExpectedSize(ids.length);
+        for (int i = 0; i < ids.length; ++i) {
+            map.put(ids[i], new RowView(i));
+        }
+        return map.buildOrThrow();
+    }
+
+    private class RowView extends AbstractMap<String, String>
+    {
+        private final int ordinal;
+
+        public RowView(int ordinal)
+        {
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public String get(Object key)
+        {
+            Integer column = nameToColumn.get(key);
+            return column == null ? null : columns[column][ordinal];
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet()
+        {
+            return new AbstractSet<>()
+            {
+                @Override
+                public Iterator<Entry<String, String>> iterator()
+                {
+                    return new Iterator<>()
+                    {
+                        int column = advance(0);
+
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return column < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, String> next()
+                        {
+                            if (column >= names.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, String> entry = new SimpleImmutableEntry<>(names[column], columns[column][ordinal]);
+                            column = advance(column + 1);
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size()
+                {
+                    int count = 0;
+                    for (String[] column: columns) {
+                        if (column[ordinal] != null) {
+                            ++count;
+                        }
+                    }
+                    return count;
+                }
+            };
+        }
+
+        private int advance(int column)
+        {
+            while (column < names.length && columns[column][ordinal] == null) {
+                ++column;
+            }
+            return column;
+        }
+    }
+
+    /**
+     * Collects rows into columns.  Rows without id are skipped.
+     */
+    public static class Builder
+    {
+        private final String[] names;
+
+        private final int[] sourceColumns;
+
+        private final int idColumn;
+
+        private final List<List<String>> columns = new ArrayList<>();
+
+        private final List<String> ids = new ArrayList<>();
+
+        private final Map<String, Integer> idToOrdinal = new HashMap<>();
+
+        private final Map<String, String> unique = new HashMap<>();
+
+        /**
+         * @param sourceNames
+         * 	names of columns in source rows, null for columns to be ignored
+         * @param idColumn
+         * 	name of column identifying the row
+         */
+        public Builder(String[] sourceNames, String idColumn)
+        {
+            List<String> names = new ArrayList<>();
+            List<Integer> sourceColumns = new ArrayList<>();
+            for (int i = 0; i < sourceNames.length; ++i) {
+                if (sourceNames[i] != null) {
+                    names.add(sourceNames[i].intern());
+                    sourceColumns.add(i);
+                    columns.add(new ArrayList<>());
+                }
+            }
+            this.names = names.toArray(new String[0]);
+            this.sourceColumns = sourceColumns.stream().mapToInt(Integer::intValue).toArray();
+            this.idColumn = names.indexOf(idColumn);
+            if (this.idColumn < 0) {
+                throw new IllegalArgumentException("Key not found in table: " + idColumn);
+            }
+        }
+
+        /**
+         * Adds row.
+         *
+         * @param values
+         * 	values indexed by source column, may be shorter than number of columns
+         *
+         * @return
+         * 	ordinal of the row or -1 if the row has no id
+         */
+        public int addRow(String[] values)
+        {
+            int idSource = sourceColumns[idColumn];
+            String id = idSource < values.length ? values[idSource] : null;
+            if (id == null || id.isEmpty()) {
+                return -1;
+            }
+            int ordinal = ids.size();
+            if (idToOrdinal.putIfAbsent(id, ordinal) != null) {
+                throw new IllegalArgumentException("Duplicate id in table: " + id);
+            }
+            ids.add(id);
+            for (int i = 0; i < names.length; ++i) {
+                int source = sourceColumns[i];
+                String value = source < values.length ? values[source] : null;
+                columns.get(i).add(value == null ? null : unique.computeIfAbsent(value, v -> v));
+            }
+            return ordinal;
+        }
+
+        public ColumnarTable build()
+        {
+            String[][] built = new String[names.length][];
+            for (int i = 0; i < names.length; ++i) {
+                built[i] = columns.get(i).toArray(new String[0]);
+            }
+            return new ColumnarTable(names, built, ids.toArray(new String[0]), ImmutableMap.copyOf(idToOrdinal));
+        }
+    }
+}
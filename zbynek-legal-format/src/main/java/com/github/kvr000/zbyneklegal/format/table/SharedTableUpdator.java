@@ -0,0 +1,148 @@
+package com.github.kvr000.zbyneklegal.format.table;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+
+/**
+ * Table kept open across several commands.  Closing by the command is ignored, the table is closed by
+ * {@link TableUpdatorFactory} once sharing ends.
+ *
+ * Remembers size and modification time of the file when opened or saved, so the table is not reused once the file
+ * is modified by someone else.  Once values are changed, the table is not reused either: when saved, the delegates
+ * keep the content parsed on open and do not reflect the changes in their row data, when not saved, typically after
+ * failed command, the next save would write the abandoned changes.
+ */
+class SharedTableUpdator implements TableUpdator
+{
+    private final TableUpdator delegate;
+
+    private final Path filePath;
+
+    private final boolean writable;
+
+    private long size;
+
+    private FileTime modified;
+
+    /** Values were changed, the content must be read again by next command. */
+    private boolean changed;
+
+    public SharedTableUpdator(TableUpdator delegate, Path filePath, boolean writable) throws IOException
+    {
+        this.delegate = delegate;
+        this.filePath = filePath;
+        this.writable = writable;
+        updateStamp();
+    }
+
+    public boolean isWritable()
+    {
+        return writable;
+    }
+
+    /**
+     * Checks whether the content is still the same as when read, neither modified by someone else nor changed by
+     * previous command, saved or not.
+     */
+    public boolean isCurrent()
+    {
+        if (changed) {
+            return false;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            return attributes.size() == size && Objects.equals(attributes.lastModifiedTime(), modified);
+        }
+        catch (IOException ex) {
+            return false;
+        }
+    }
+
+    public void closeShared()
+    {
+        delegate.close();
+    }
+
+    @Override
+    public Map<String, Integer> getHeaders()
+    {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public Map<String, Map<String, String>> listEntries()
+    {
+        return delegate.listEntries();
+    }
+
+    @Override
+    public ColumnarTable listColumns()
+    {
+        return delegate.listColumns();
+    }
+
+    @Override
+    public String getUrl(String id, String key)
+    {
+        return delegate.getUrl(id, key);
+    }
+
+    @Override
+    public String getOptionalValue(String id, String key)
+    {
+        return delegate.getOptionalValue(id, key);
+    }
+
+    @Override
+    public String getConfig(String config, String key)
+    {
+        return delegate.getConfig(config, key);
+    }
+
+    @Override
+    public Optional<String> getOptionalConfig(String config, String key)
+    {
+        return delegate.getOptionalConfig(config, key);
+    }
+
+    @Override
+    public void setValue(String id, String key, String value)
+    {
+        delegate.setValue(id, key, value);
+        changed = true;
+    }
+
+    @Override
+    public Map<String, Map<String, String>> readSheet(String sheetName, String key) throws IOException
+    {
+        return delegate.readSheet(sheetName, key);
+    }
+
+    @Override
+    public void save() throws IOException
+    {
+        delegate.save();
+        if (!changed) {
+            updateStamp();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    private void updateStamp() throws IOException
+    {
+        BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        size = attributes.size();
+        modified = attributes.lastModifiedTime();
+    }
+}
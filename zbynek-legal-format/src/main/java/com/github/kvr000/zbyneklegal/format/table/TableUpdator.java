@@ -13,6 +13,11 @@ public interface TableUpdator extends Closeable
 
     public Map<String, Map<String, String>> listEntries();
 
+    /**
+     * Lists entries in columnar form, rows without id are skipped.
+     */
+    public ColumnarTable listColumns();
+
     public String getUrl(String id, String key);
 
     public String getOptionalValue(String id, String key);
@@ -3,14 +3,72 @@ package com.github.kvr000.zbyneklegal.format.table;
 import org.apache.commons.io.FilenameUtils;
 
 import javax.inject.Singleton;
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 @Singleton
 public class TableUpdatorFactory
 {
-    public TableUpdator openTableUpdator(Path filename, String sheet, String idColumn) throws IOException
+    private Map<List<String>, SharedTableUpdator> sharedTables;
+
+    public synchronized TableUpdator openTableUpdator(Path filename, String sheet, String idColumn) throws IOException
+    {
+        if (sharedTables != null) {
+            List<String> key = sharedKey(filename, sheet, idColumn);
+            SharedTableUpdator table = sharedTables.get(key);
+            if (table == null || !table.isWritable() || !table.isCurrent()) {
+                table = new SharedTableUpdator(openTableUpdatorDirect(filename, sheet, idColumn), filename, true);
+                replaceShared(key, table);
+            }
+            return table;
+        }
+        return openTableUpdatorDirect(filename, sheet, idColumn);
+    }
+
+    /**
+     * Opens table for reading only.  XLSX files are parsed as stream, reading only the requested sheet, which is much
+     * faster and lighter than full workbook.  Other formats are opened by {@link #openTableUpdator(Path, String, String)}.
+     */
+    public synchronized TableUpdator openTableReader(Path filename, String sheet, String idColumn) throws IOException
+    {
+        if (sharedTables != null) {
+            List<String> key = sharedKey(filename, sheet, idColumn);
+            SharedTableUpdator table = sharedTables.get(key);
+            if (table == null || !table.isCurrent()) {
+                table = new SharedTableUpdator(openTableReaderDirect(filename, sheet, idColumn), filename, false);
+                replaceShared(key, table);
+            }
+            return table;
+        }
+        return openTableReaderDirect(filename, sheet, idColumn);
+    }
+
+    /**
+     * Starts sharing opened tables, until the returned object is closed.  Tables opened meanwhile are kept open and
+     * returned again for the same file, sheet and id column, as long as the file is not modified by other means and
+     * no values were changed in it, saved or not.  Tables which are not reused are closed and discarded.  Table opened for reading is replaced by full updator once requested.
+     */
+    public synchronized Closeable shareTables()
+    {
+        if (sharedTables != null) {
+            throw new IllegalStateException("Tables already shared");
+        }
+        sharedTables = new HashMap<>();
+        return () -> {
+            synchronized (this) {
+                sharedTables.values().forEach(SharedTableUpdator::closeShared);
+                sharedTables = null;
+            }
+        };
+    }
+
+    private TableUpdator openTableUpdatorDirect(Path filename, String sheet, String idColumn) throws IOException
     {
         String lastname = filename.getFileName().toString();
         if (FilenameUtils.isExtension(lastname, "tsv")) {
@@ -23,4 +81,28 @@ public class TableUpdatorFactory
             throw new IOException("Unsupported file extension: " + lastname);
         }
     }
+
+    private TableUpdator openTableReaderDirect(Path filename, String sheet, String idColumn) throws IOException
+    {
+        String lastname = filename.getFileName().toString();
+        if (FilenameUtils.isExtension(lastname, "xlsx")) {
+            return XlsxSnapshotCache.open(filename, sheet, idColumn);
+        }
+        else {
+            return openTableUpdatorDirect(filename, sheet, idColumn);
+        }
+    }
+
+    private void replaceShared(List<String> key, SharedTableUpdator table)
+    {
+        SharedTableUpdator old = sharedTables.put(key, table);
+        if (old != null) {
+            old.closeShared();
+        }
+    }
+
+    private static List<String> sharedKey(Path filename, String sheet, String idColumn)
+    {
+        return Arrays.asList(filename.toAbsolutePath().normalize().toString(), sheet, idColumn);
+    }
 }
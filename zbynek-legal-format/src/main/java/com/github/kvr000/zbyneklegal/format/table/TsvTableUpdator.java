@@ -29,7 +29,6 @@ public class TsvTableUpdator extends AbstractTableUpdator
             .build();
 
     private final Path filePath;
-    private final Map<String, Integer> headers;
     private final ImmutableMap<String, Integer> configToRows;
     private final List<Map<String, String>> records;
     private final Map<String, Map<String, String>> values;
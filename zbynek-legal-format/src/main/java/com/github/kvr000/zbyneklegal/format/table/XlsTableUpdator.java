@@ -3,6 +3,7 @@ package com.github.kvr000.zbyneklegal.format.table;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Streams;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
@@ -11,6 +12,8 @@ import org.apache.poi.ss.usermodel.Hyperlink;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.FileNotFoundException;
@@ -21,7 +24,9 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -42,10 +47,16 @@ public class XlsTableUpdator extends AbstractTableUpdator
     private String[] headerNames;
 
     private final ImmutableMap<String, Integer> configToRows;
-    private List<Map<String, String>> records;
-    private Map<String, Map<String, String>> values;
+    private final ColumnarTable columns;
+    private final Map<String, Map<String, String>> values;
 
-    private Map<String, Integer> idToRow;
+    /** Sheet row of each ordinal in columns. */
+    private final int[] ordinalToRow;
+
+    /** Cells changed since load, written by {@link XlsxPatchWriter} unless full write is needed. */
+    private final Map<CellAddress, String> dirtyCells = new LinkedHashMap<>();
+
+    private boolean fullWrite = false;
 
     public XlsTableUpdator(Path path, String sheetName, String idColumn) throws IOException
     {
@@ -92,32 +103,26 @@ public class XlsTableUpdator extends AbstractTableUpdator
                     .filter(Objects::nonNull)
                     .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
 
-            records = IntStream.rangeClosed(sheet.getFirstRowNum(), sheet.getLastRowNum())
-                    .mapToObj(rowId -> sheet.getRow(rowId))
-                    .skip(1)
-                    .map(row -> row == null ? Collections.<String, String>emptyMap() : StreamSupport.stream(row.spliterator(), false)
-                            .filter(cell -> cell.getColumnIndex() < headerNames.length)
-                            .filter(cell -> headerNames[cell.getColumnIndex()] != null)
-                            .collect(ImmutableMap.toImmutableMap(
-                                    cell -> headerNames[cell.getColumnIndex()],
-                                    cell -> Strings.nullToEmpty(getCellString(cell))
-                            ))
-                    )
-                    .toList();
-            values = records.stream()
-                    .filter(rec -> !Strings.isNullOrEmpty(rec.get(this.idColumn)))
-                    .collect(ImmutableMap.toImmutableMap(
-                            rec -> rec.get(this.idColumn),
-                            rec -> rec
-                    ));
-            idToRow = Streams.zip(
-                            records.stream(),
-                            IntStream.rangeClosed(1, Integer.MAX_VALUE).boxed(),
-                            AbstractMap.SimpleImmutableEntry::new
-                    )
-                    .map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey().get(this.idColumn), entry.getValue()))
-                    .filter(entry -> !Strings.isNullOrEmpty(entry.getKey()))
-                    .collect(ImmutableMap.toImmutableMap(entry -> entry.getKey(), entry -> entry.getValue()));
+            ColumnarTable.Builder builder = new ColumnarTable.Builder(headerNames, this.idColumn);
+            List<Integer> rows = new ArrayList<>();
+            for (int rowId = sheet.getFirstRowNum() + 1; rowId <= sheet.getLastRowNum(); ++rowId) {
+                Row row = sheet.getRow(rowId);
+                if (row == null) {
+                    continue;
+                }
+                String[] rowValues = new String[headerNames.length];
+                for (Cell cell: row) {
+                    if (cell.getColumnIndex() < headerNames.length) {
+                        rowValues[cell.getColumnIndex()] = Strings.nullToEmpty(getCellString(cell));
+                    }
+                }
+                if (builder.addRow(rowValues) >= 0) {
+                    rows.add(rowId);
+                }
+            }
+            columns = builder.build();
+            values = columns.asMap();
+            ordinalToRow = rows.stream().mapToInt(Integer::intValue).toArray();
         }
     }
 
@@ -126,6 +131,12 @@ public class XlsTableUpdator extends AbstractTableUpdator
         return values;
     }
 
+    @Override
+    public ColumnarTable listColumns()
+    {
+        return columns;
+    }
+
     @Override
     public String getUrl(String id, String key)
     {
@@ -136,9 +147,8 @@ public class XlsTableUpdator extends AbstractTableUpdator
 
     @Override
     public String getOptionalValue(String id, String key) {
-        return Optional.ofNullable(values.get(id))
-                .map(record -> record.get(key))
-                .orElse(null);
+        int ordinal = columns.getOrdinal(id);
+        return ordinal < 0 ? null : columns.getValue(ordinal, key);
     }
 
     @Override
@@ -161,7 +171,13 @@ public class XlsTableUpdator extends AbstractTableUpdator
     public void setValue(String id, String key, String value)
     {
         try {
-            upsertCell(id, key).setCellValue(value);
+            Cell cell = upsertCell(id, key);
+            if (cell.getCellType() == CellType.FORMULA) {
+                // calculation chain refers to formula cells, let POI handle it
+                fullWrite = true;
+            }
+            cell.setCellValue(value);
+            dirtyCells.put(new CellAddress(cell), value);
         }
         catch (Exception ex) {
             throw new IllegalArgumentException("Trying to access unknown column: " + "id=" + id + " key=" + key, ex);
@@ -207,9 +223,19 @@ public class XlsTableUpdator extends AbstractTableUpdator
 
     public void save() throws IOException
     {
-        try (OutputStream output = Files.newOutputStream(this.filePath)) {
-            workbook.write(output);
+        if (dirtyCells.isEmpty()) {
+            return;
+        }
+        if (!fullWrite && sheet instanceof XSSFSheet xssfSheet && FilenameUtils.isExtension(filePath.getFileName().toString(), "xlsx")) {
+            XlsxPatchWriter.patch(filePath, xssfSheet.getPackagePart().getPartName().getName(), dirtyCells);
+        }
+        else {
+            try (OutputStream output = Files.newOutputStream(this.filePath)) {
+                workbook.write(output);
+            }
         }
+        dirtyCells.clear();
+        fullWrite = false;
     }
 
     @Override
@@ -224,10 +250,11 @@ public class XlsTableUpdator extends AbstractTableUpdator
 
     private Cell upsertCell(String id, String key)
     {
-        Integer row = idToRow.get(id);
-        if (row == null) {
+        int ordinal = columns.getOrdinal(id);
+        if (ordinal < 0) {
             throw new IllegalArgumentException("Trying to access invalid id: " + id);
         }
+        int row = ordinalToRow[ordinal];
         try {
             return Objects.requireNonNull(sheet.getRow(row).getCell(headers.get(key), Row.MissingCellPolicy.CREATE_NULL_AS_BLANK));
         }
@@ -239,10 +266,11 @@ public class XlsTableUpdator extends AbstractTableUpdator
 
     private Optional<Cell> getOptionalCell(String id, String key)
     {
-        Integer row = idToRow.get(id);
-        if (row == null) {
+        int ordinal = columns.getOrdinal(id);
+        if (ordinal < 0) {
             throw new IllegalArgumentException("Trying to access invalid id: " + id);
         }
+        int row = ordinalToRow[ordinal];
         try {
             return Optional.ofNullable(sheet.getRow(row).getCell(headers.get(key)));
         }
@@ -0,0 +1,288 @@
+package com.github.kvr000.zbyneklegal.format.table;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellReference;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Writes changed cells into XLSX file without rewriting the whole workbook.
+ *
+ * Only the XML part of modified sheet is rewritten, all other parts are copied raw, without decompressing.  Values are
+ * written as inline strings, so shared strings table stays untouched.
+ */
+public class XlsxPatchWriter
+{
+    /**
+     * Replaces cells in sheet, writing the result via temporary file.
+     *
+     * @param file
+     * 	XLSX file to update
+     * @param sheetPart
+     * 	name of sheet part within package, such as /xl/worksheets/sheet1.xml
+     * @param cells
+     * 	new string values of cells
+     */
+    public static void patch(Path file, String sheetPart, Map<CellAddress, String> cells) throws IOException
+    {
+        String entryName = sheetPart.startsWith("/") ? sheetPart.substring(1) : sheetPart;
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            boolean found = false;
+            try (
+                ZipFile zip = new ZipFile(file.toFile());
+                ZipArchiveOutputStream output = new ZipArchiveOutputStream(tmp.toFile())
+            ) {
+                for (Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder(); entries.hasMoreElements(); ) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    if (entry.getName().equals(entryName)) {
+                        found = true;
+                        output.putArchiveEntry(new ZipArchiveEntry(entry.getName()));
+                        try (InputStream input = zip.getInputStream(entry)) {
+                            patchSheet(input, output, cells);
+                        }
+                        output.closeArchiveEntry();
+                    }
+                    else {
+                        output.addRawArchiveEntry(entry, zip.getRawInputStream(entry));
+                    }
+                }
+            }
+            if (!found) {
+                throw new IOException("Sheet part not found in XLSX file: file=" + file + " part=" + sheetPart);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void patchSheet(InputStream input, OutputStream output, Map<CellAddress, String> cells) throws IOException
+    {
+        TreeMap<Integer, TreeMap<Integer, String>> rows = new TreeMap<>();
+        cells.forEach((address, value) -> rows.computeIfAbsent(address.getRow(), k -> new TreeMap<>()).put(address.getColumn(), value));
+
+        // ISO-8859-1 maps bytes to chars one to one, so positions match and unchanged content is copied exactly
+        byte[] data = input.readAllBytes();
+        String xml = new String(data, StandardCharsets.ISO_8859_1);
+        SheetPatcher patcher = new SheetPatcher(xml, data, output, rows);
+        patcher.run();
+        if (!rows.isEmpty()) {
+            throw new IOException("Failed to find sheet data in XLSX sheet");
+        }
+    }
+
+    /**
+     * Scans sheet XML for row and cell tags only.  Markup cannot appear unescaped in text or attribute values, so
+     * every {@code <} starts a tag, comment, processing instruction or CDATA section.
+     */
+    private static class SheetPatcher
+    {
+        private static final Pattern ATTRIBUTE_PATTERN = Pattern.compile("\\s([\\w:]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+
+        private final String xml;
+
+        private final byte[] data;
+
+        private final OutputStream output;
+
+        private final TreeMap<Integer, TreeMap<Integer, String>> rows;
+
+        private int copied = 0;
+
+        private String prefix = "";
+
+        private TreeMap<Integer, String> rowCells;
+
+        private int rowId = -1;
+
+        private int column = -1;
+
+        public SheetPatcher(String xml, byte[] data, OutputStream output, TreeMap<Integer, TreeMap<Integer, String>> rows)
+        {
+            this.xml = xml;
+            this.data = data;
+            this.output = output;
+            this.rows = rows;
+        }
+
+        public void run() throws IOException
+        {
+            int pos = 0;
+            scan: for (;;) {
+                int tagStart = xml.indexOf('<', pos);
+                if (tagStart < 0) {
+                    break;
+                }
+                if (xml.startsWith("<!--", tagStart)) {
+                    pos = skipPast(tagStart, "-->");
+                    continue;
+                }
+                if (xml.startsWith("<![CDATA[", tagStart)) {
+                    pos = skipPast(tagStart, "]]>");
+                    continue;
+                }
+                if (xml.startsWith("<?", tagStart) || xml.startsWith("<!", tagStart)) {
+                    pos = skipPast(tagStart, ">");
+                    continue;
+                }
+                int tagEnd = skipPast(tagStart, ">");
+                boolean end = xml.charAt(tagStart + 1) == '/';
+                boolean empty = xml.charAt(tagEnd - 2) == '/';
+                int nameStart = tagStart + (end ? 2 : 1);
+                int nameEnd = nameStart;
+                while (nameEnd < tagEnd && !Character.isWhitespace(xml.charAt(nameEnd)) && xml.charAt(nameEnd) != '>' && xml.charAt(nameEnd) != '/') {
+                    ++nameEnd;
+                }
+                String name = xml.substring(nameStart, nameEnd);
+                int colon = name.indexOf(':');
+                String localName = name.substring(colon + 1);
+                pos = tagEnd;
+                if (end) {
+                    switch (localName) {
+                    case "row" -> {
+                        if (rowCells != null) {
+                            copyTo(tagStart);
+                            writeCellsBefore(Integer.MAX_VALUE);
+                            rowCells = null;
+                        }
+                    }
+                    case "sheetData" -> {
+                        copyTo(tagStart);
+                        writeRowsBefore(Integer.MAX_VALUE);
+                    }
+                    }
+                    continue;
+                }
+                switch (localName) {
+                case "sheetData" -> {
+                    prefix = colon < 0 ? "" : name.substring(0, colon + 1);
+                    if (empty) {
+                        copyTo(tagEnd - 2);
+                        write(">");
+                        writeRowsBefore(Integer.MAX_VALUE);
+                        write("</" + name + ">");
+                        copied = tagEnd;
+                    }
+                }
+                case "row" -> {
+                    String r = getAttribute(tagStart, tagEnd, "r");
+                    rowId = r == null ? rowId + 1 : Integer.parseInt(r) - 1;
+                    column = -1;
+                    copyTo(tagStart);
+                    writeRowsBefore(rowId);
+                    rowCells = rows.remove(rowId);
+                    if (empty && rowCells != null) {
+                        copyTo(tagEnd - 2);
+                        write(">");
+                        writeCellsBefore(Integer.MAX_VALUE);
+                        write("</" + name + ">");
+                        copied = tagEnd;
+                        rowCells = null;
+                    }
+                    else if (rowCells == null && !empty) {
+                        // unchanged row, cells are not scanned
+                        pos = skipPast(tagEnd, "</" + name + ">");
+                    }
+                    if (rowCells == null && rows.isEmpty()) {
+                        // nothing left to patch, the rest is copied as is
+                        break scan;
+                    }
+                }
+                case "c" -> {
+                    String r = getAttribute(tagStart, tagEnd, "r");
+                    column = r == null ? column + 1 : new CellReference(r).getCol();
+                    if (rowCells != null) {
+                        copyTo(tagStart);
+                        writeCellsBefore(column);
+                        String value = rowCells.remove(column);
+                        if (value != null) {
+                            writeCell(rowId, column, getAttribute(tagStart, tagEnd, "s"), value);
+                            pos = empty ? tagEnd : skipPast(tagEnd, "</" + name + ">");
+                            copied = pos;
+                        }
+                    }
+                }
+                }
+            }
+            copyTo(xml.length());
+        }
+
+        private void writeRowsBefore(int limit) throws IOException
+        {
+            while (!rows.isEmpty() && rows.firstKey() < limit) {
+                Map.Entry<Integer, TreeMap<Integer, String>> row = rows.pollFirstEntry();
+                write("<" + prefix + "row r=\"" + (row.getKey() + 1) + "\">");
+                for (Map.Entry<Integer, String> cell: row.getValue().entrySet()) {
+                    writeCell(row.getKey(), cell.getKey(), null, cell.getValue());
+                }
+                write("</" + prefix + "row>");
+            }
+        }
+
+        private void writeCellsBefore(int limit) throws IOException
+        {
+            while (!rowCells.isEmpty() && rowCells.firstKey() < limit) {
+                Map.Entry<Integer, String> cell = rowCells.pollFirstEntry();
+                writeCell(rowId, cell.getKey(), null, cell.getValue());
+            }
+        }
+
+        private void writeCell(int row, int col, String style, String value) throws IOException
+        {
+            write("<" + prefix + "c r=\"" + new CellAddress(row, col).formatAsString() + "\"" +
+                    (style == null ? "" : " s=\"" + style + "\"") +
+                    " t=\"inlineStr\"><" + prefix + "is><" + prefix + "t" +
+                    (value.equals(value.strip()) ? "" : " xml:space=\"preserve\"") + ">");
+            output.write(value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").getBytes(StandardCharsets.UTF_8));
+            write("</" + prefix + "t></" + prefix + "is></" + prefix + "c>");
+        }
+
+        private String getAttribute(int tagStart, int tagEnd, String name)
+        {
+            Matcher matcher = ATTRIBUTE_PATTERN.matcher(xml).region(tagStart, tagEnd);
+            while (matcher.find()) {
+                if (matcher.group(1).equals(name)) {
+                    return matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+                }
+            }
+            return null;
+        }
+
+        private int skipPast(int from, String terminator) throws IOException
+        {
+            int found = xml.indexOf(terminator, from);
+            if (found < 0) {
+                throw new IOException("Unterminated markup in XLSX sheet at offset " + from);
+            }
+            return found + terminator.length();
+        }
+
+        private void copyTo(int end) throws IOException
+        {
+            output.write(data, copied, end - copied);
+            copied = end;
+        }
+
+        private void write(String markup) throws IOException
+        {
+            output.write(markup.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
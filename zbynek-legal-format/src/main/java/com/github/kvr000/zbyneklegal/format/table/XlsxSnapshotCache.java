@@ -0,0 +1,290 @@
+package com.github.kvr000.zbyneklegal.format.table;
+
+import com.google.common.collect.ImmutableMap;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.poi.ss.util.CellAddress;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+
+/**
+ * Binary snapshot of parsed XLSX table, stored next to the index file as {@code .name.xlsx.snapshot}.
+ *
+ * The snapshot is valid for the same file size, modification time and SHA256 of the index, sheet and id column.
+ * Otherwise the file is parsed again and the snapshot replaced.  Strings are stored once in a pool and referenced by
+ * index, so restored columns share repeated values.
+ */
+@Log4j2
+public class XlsxSnapshotCache
+{
+    private static final byte[] MAGIC = "ZLFXLSX\n".getBytes(StandardCharsets.US_ASCII);
+
+    /** Increase when format or parsing changes. */
+    private static final int VERSION = 1;
+
+    /**
+     * Opens read-only table, from snapshot if valid.
+     */
+    public static XlsxStreamingTableUpdator open(Path file, String sheet, String idColumn) throws IOException
+    {
+        Path snapshotFile = file.toAbsolutePath().resolveSibling("." + file.getFileName() + ".snapshot");
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        byte[] checksum;
+        try (InputStream input = Files.newInputStream(file)) {
+            checksum = DigestUtils.sha256(input);
+        }
+        Key key = new Key(attributes.size(), attributes.lastModifiedTime().toMillis(), checksum, sheet, idColumn);
+
+        try {
+            XlsxStreamingTableUpdator.Snapshot snapshot = read(snapshotFile, key);
+            if (snapshot != null) {
+                log.debug("Using index snapshot: file={}", file);
+                return new XlsxStreamingTableUpdator(file, idColumn, snapshot);
+            }
+        }
+        catch (NoSuchFileException ex) {
+            // not yet created
+        }
+        catch (IOException|RuntimeException ex) {
+            log.warn("Ignoring broken index snapshot: file={}: {}", snapshotFile, ex.toString());
+        }
+
+        XlsxStreamingTableUpdator table = new XlsxStreamingTableUpdator(file, sheet, idColumn);
+        try {
+            write(snapshotFile, key, table.getSnapshot());
+        }
+        catch (IOException ex) {
+            log.warn("Failed to write index snapshot: file={}: {}", snapshotFile, ex.toString());
+        }
+        return table;
+    }
+
+    private static XlsxStreamingTableUpdator.Snapshot read(Path snapshotFile, Key key) throws IOException
+    {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION) {
+                return null;
+            }
+            long size = buffer.getLong();
+            long modified = buffer.getLong();
+            byte[] checksum = new byte[buffer.getInt()];
+            buffer.get(checksum);
+            String[] keyStrings = readPool(buffer);
+            if (!new Key(size, modified, checksum, keyStrings[0], keyStrings[1]).equals(key)) {
+                return null;
+            }
+
+            String[] pool = readPool(buffer);
+            String[] headerNames = readStrings(buffer, pool, buffer.getInt());
+
+            String[] names = readStrings(buffer, pool, buffer.getInt());
+            int rows = buffer.getInt();
+            String[] ids = readStrings(buffer, pool, rows);
+            String[][] columns = new String[names.length][];
+            for (int i = 0; i < names.length; ++i) {
+                columns[i] = readStrings(buffer, pool, rows);
+            }
+            int[] ordinalToRow = new int[rows];
+            buffer.asIntBuffer().get(ordinalToRow);
+            buffer.position(buffer.position() + rows * Integer.BYTES);
+
+            Map<CellAddress, String> hyperlinks = new HashMap<>();
+            for (int i = buffer.getInt(); --i >= 0; ) {
+                hyperlinks.put(new CellAddress(buffer.getInt(), buffer.getInt()), pool[buffer.getInt()]);
+            }
+
+            ImmutableMap.Builder<String, Map<String, String>> configRows = ImmutableMap.builder();
+            for (int i = buffer.getInt(); --i >= 0; ) {
+                String config = pool[buffer.getInt()];
+                ImmutableMap.Builder<String, String> values = ImmutableMap.builder();
+                for (int j = buffer.getInt(); --j >= 0; ) {
+                    values.put(pool[buffer.getInt()], pool[buffer.getInt()]);
+                }
+                configRows.put(config, values.buildOrThrow());
+            }
+
+            return new XlsxStreamingTableUpdator.Snapshot(
+                    headerNames,
+                    configRows.buildOrThrow(),
+                    ColumnarTable.fromColumns(names, columns, ids),
+                    ordinalToRow,
+                    hyperlinks
+            );
+        }
+        catch (BufferUnderflowException|IndexOutOfBoundsException ex) {
+            throw new IOException("Truncated index snapshot: " + snapshotFile, ex);
+        }
+    }
+
+    private static void write(Path snapshotFile, Key key, XlsxStreamingTableUpdator.Snapshot snapshot) throws IOException
+    {
+        Map<String, Integer> pool = new LinkedHashMap<>();
+        ColumnarTable columns = snapshot.columns();
+        String[] names = columns.getNames();
+        Arrays.stream(snapshot.headerNames()).forEach(s -> addPool(pool, s));
+        Arrays.stream(names).forEach(s -> addPool(pool, s));
+        for (int i = 0; i < columns.size(); ++i) {
+            addPool(pool, columns.getId(i));
+        }
+        for (String name: names) {
+            Arrays.stream(columns.getColumn(name)).forEach(s -> addPool(pool, s));
+        }
+        snapshot.hyperlinks().values().forEach(s -> addPool(pool, s));
+        snapshot.configRows().forEach((config, values) -> {
+            addPool(pool, config);
+            values.forEach((k, v) -> {
+                addPool(pool, k);
+                addPool(pool, v);
+            });
+        });
+
+        Path tmp = Files.createTempFile(snapshotFile.getParent(), snapshotFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                output.write(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(key.size());
+                output.writeLong(key.modified());
+                output.writeInt(key.checksum().length);
+                output.write(key.checksum());
+                writePool(output, new String[]{ key.sheet(), key.idColumn() });
+
+                writePool(output, pool.keySet().toArray(new String[0]));
+                output.writeInt(snapshot.headerNames().length);
+                writeStrings(output, pool, snapshot.headerNames());
+
+                output.writeInt(names.length);
+                writeStrings(output, pool, names);
+                output.writeInt(columns.size());
+                for (int i = 0; i < columns.size(); ++i) {
+                    output.writeInt(pool.get(columns.getId(i)));
+                }
+                for (String name: names) {
+                    writeStrings(output, pool, columns.getColumn(name));
+                }
+                for (int row: snapshot.ordinalToRow()) {
+                    output.writeInt(row);
+                }
+
+                output.writeInt(snapshot.hyperlinks().size());
+                for (Map.Entry<CellAddress, String> link: snapshot.hyperlinks().entrySet()) {
+                    output.writeInt(link.getKey().getRow());
+                    output.writeInt(link.getKey().getColumn());
+                    output.writeInt(pool.get(link.getValue()));
+                }
+
+                output.writeInt(snapshot.configRows().size());
+                for (Map.Entry<String, Map<String, String>> config: snapshot.configRows().entrySet()) {
+                    output.writeInt(pool.get(config.getKey()));
+                    output.writeInt(config.getValue().size());
+                    for (Map.Entry<String, String> value: config.getValue().entrySet()) {
+                        output.writeInt(pool.get(value.getKey()));
+                        output.writeInt(pool.get(value.getValue()));
+                    }
+                }
+            }
+            Files.move(tmp, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void addPool(Map<String, Integer> pool, String value)
+    {
+        if (value != null) {
+            pool.putIfAbsent(value, pool.size());
+        }
+    }
+
+    private static void writePool(DataOutputStream output, String[] strings) throws IOException
+    {
+        output.writeInt(strings.length);
+        for (String s: strings) {
+            if (s == null) {
+                output.writeInt(-1);
+            }
+            else {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        }
+    }
+
+    private static String[] readPool(ByteBuffer buffer)
+    {
+        String[] strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; ++i) {
+            int length = buffer.getInt();
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return strings;
+    }
+
+    private static void writeStrings(DataOutputStream output, Map<String, Integer> pool, String[] strings) throws IOException
+    {
+        for (String s: strings) {
+            output.writeInt(s == null ? -1 : pool.get(s));
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, String[] pool, int count)
+    {
+        String[] strings = new String[count];
+        for (int i = 0; i < count; ++i) {
+            int index = buffer.getInt();
+            strings[i] = index < 0 ? null : pool[index];
+        }
+        return strings;
+    }
+
+    private record Key(long size, long modified, byte[] checksum, String sheet, String idColumn)
+    {
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Key other
+                    && size == other.size
+                    && modified == other.modified
+                    && Arrays.equals(checksum, other.checksum)
+                    && Objects.equals(sheet, other.sheet)
+                    && Objects.equals(idColumn, other.idColumn);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(size, modified, Arrays.hashCode(checksum), sheet, idColumn);
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package com.github.kvr000.zbyneklegal.format.table;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+
+/**
+ * Read-only XLSX table, parsing sheet XML as stream instead of loading the whole workbook into memory.
+ *
+ * Only the selected sheet is parsed on open, other sheets are parsed on {@link #readSheet(String, String)} request.
+ * Values are the same as provided by {@link XlsTableUpdator}.
+ */
+public class XlsxStreamingTableUpdator extends AbstractTableUpdator
+{
+    private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private OPCPackage pkg;
+
+    private XSSFReader reader;
+
+    private SharedStrings sharedStrings;
+
+    private StylesTable styles;
+
+    private String[] headerNames;
+
+    private final ImmutableMap.Builder<String, Map<String, String>> configRowsBuilder = ImmutableMap.builder();
+    private ColumnarTable.Builder columnsBuilder;
+    private final List<Integer> rowsBuilder = new ArrayList<>();
+
+    private final Map<String, Map<String, String>> configRows;
+    private final ColumnarTable columns;
+    private final Map<String, Map<String, String>> values;
+    /** Sheet row of each ordinal in columns. */
+    private final int[] ordinalToRow;
+    private final Map<CellAddress, String> hyperlinks = new HashMap<>();
+
+    public XlsxStreamingTableUpdator(Path path, String sheetName, String idColumn) throws IOException
+    {
+        super(path, idColumn);
+
+        try {
+            if (!parseSheet(sheetName, this::readRow, hyperlinks)) {
+                throw new IOException("Cannot find sheet with name and id: sheet=" + sheetName + " idColumns=" + idColumn);
+            }
+            if (headers == null) {
+                throw new IOException("Header not found: Date");
+            }
+            configRows = configRowsBuilder.buildOrThrow();
+            columns = columnsBuilder.build();
+            values = columns.asMap();
+            ordinalToRow = rowsBuilder.stream().mapToInt(Integer::intValue).toArray();
+        }
+        catch (IOException|RuntimeException ex) {
+            close();
+            throw ex;
+        }
+        catch (OpenXML4JException|SAXException ex) {
+            close();
+            throw new IOException("Failed to read XLSX file: " + path, ex);
+        }
+    }
+
+    /**
+     * Creates table from previously parsed content, the file is opened only if other sheets are read.
+     */
+    XlsxStreamingTableUpdator(Path path, String idColumn, Snapshot snapshot)
+    {
+        super(path, idColumn);
+
+        headerNames = snapshot.headerNames();
+        ImmutableMap.Builder<String, Integer> headersBuilder = ImmutableMap.builder();
+        for (int i = 0; i < headerNames.length; ++i) {
+            if (headerNames[i] != null) {
+                headersBuilder.put(headerNames[i], i);
+            }
+        }
+        headers = headersBuilder.buildOrThrow();
+        configRows = snapshot.configRows();
+        columns = snapshot.columns();
+        values = columns.asMap();
+        ordinalToRow = snapshot.ordinalToRow();
+        hyperlinks.putAll(snapshot.hyperlinks());
+    }
+
+    /**
+     * Gets parsed content, to be stored in cache.
+     */
+    Snapshot getSnapshot()
+    {
+        return new Snapshot(headerNames, configRows, columns, ordinalToRow, hyperlinks);
+    }
+
+    @Override
+    public Map<String, Map<String, String>> listEntries()
+    {
+        return values;
+    }
+
+    @Override
+    public ColumnarTable listColumns()
+    {
+        return columns;
+    }
+
+    @Override
+    public String getUrl(String id, String key)
+    {
+        int ordinal = columns.getOrdinal(id);
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Trying to access invalid id: " + id);
+        }
+        int row = ordinalToRow[ordinal];
+        Integer column = headers.get(key);
+        if (column == null) {
+            throw new IllegalArgumentException("Trying to access unknown column: " + "id=" + id + " key=" + key);
+        }
+        return hyperlinks.get(new CellAddress(row, column));
+    }
+
+    @Override
+    public String getOptionalValue(String id, String key)
+    {
+        int ordinal = columns.getOrdinal(id);
+        return ordinal < 0 ? null : columns.getValue(ordinal, key);
+    }
+
+    @Override
+    public String getConfig(String config, String key)
+    {
+        return getOptionalConfig(config, key)
+                .orElseThrow(() -> new IllegalArgumentException("No config found for key: config=" + config + " key=" + key));
+    }
+
+    @Override
+    public Optional<String> getOptionalConfig(String config, String key)
+    {
+        return Optional.ofNullable(configRows.get(config))
+                .map(row -> row.get(key))
+                .filter(StringUtils::isNotEmpty);
+    }
+
+    @Override
+    public void setValue(String id, String key, String value)
+    {
+        throw new UnsupportedOperationException("Table opened read-only: " + filePath);
+    }
+
+    @Override
+    public Map<String, Map<String, String>> readSheet(String name, String key) throws IOException
+    {
+        Map<Integer, String> names = new HashMap<>();
+        ImmutableMap.Builder<String, Map<String, String>> rows = ImmutableMap.builder();
+        boolean found;
+        try {
+            found = parseSheet(name, (rowId, cells) -> {
+                if (rowId == 0) {
+                    cells.forEach((column, cell) -> {
+                        if (cell.raw() != null) {
+                            names.put(column, cell.raw());
+                        }
+                    });
+                    if (!names.containsValue(key)) {
+                        throw new IllegalArgumentException("Key not found in XLS file: sheet=" + name + " key=" + key);
+                    }
+                    return;
+                }
+                ImmutableMap.Builder<String, String> row = ImmutableMap.builder();
+                cells.forEach((column, cell) -> {
+                    String header = names.get(column);
+                    if (header != null) {
+                        row.put(header, Strings.nullToEmpty(cell.raw()));
+                    }
+                });
+                Map<String, String> record = row.buildOrThrow();
+                if (!Strings.isNullOrEmpty(record.get(key))) {
+                    rows.put(record.get(key), record);
+                }
+            }, null);
+        }
+        catch (OpenXML4JException|SAXException ex) {
+            throw new IOException("Failed to read XLSX sheet: sheet=" + name, ex);
+        }
+        if (!found) {
+            throw new FileNotFoundException("Sheet not found: sheet=" + name);
+        }
+        return rows.buildOrThrow();
+    }
+
+    @Override
+    public void save() throws IOException
+    {
+        throw new UnsupportedOperationException("Table opened read-only: " + filePath);
+    }
+
+    @Override
+    public void close()
+    {
+        if (pkg != null) {
+            pkg.revert();
+            pkg = null;
+        }
+    }
+
+    private void readRow(int rowId, Map<Integer, CellValue> cells)
+    {
+        if (rowId == 0) {
+            Map<Integer, String> names = new HashMap<>();
+            cells.forEach((column, cell) -> {
+                if (StringUtils.isNotEmpty(cell.formatted())) {
+                    names.put(column, cell.formatted());
+                }
+            });
+            headerNames = new String[names.keySet().stream().reduce(-1, Integer::max) + 1];
+            names.forEach((column, name) -> headerNames[column] = name);
+            ImmutableMap.Builder<String, Integer> headersBuilder = ImmutableMap.builder();
+            names.forEach((column, name) -> headersBuilder.put(name, column));
+            headers = headersBuilder.buildOrThrow();
+            if (!headers.containsKey("Date")) {
+                throw new IllegalArgumentException("Header not found: Date");
+            }
+            if (!headers.containsKey(this.idColumn)) {
+                throw new IllegalArgumentException("Key not found in XLS file: " + this.idColumn);
+            }
+            columnsBuilder = new ColumnarTable.Builder(headerNames, this.idColumn);
+            return;
+        }
+        if (headers == null) {
+            throw new IllegalArgumentException("Header not found: Date");
+        }
+
+        CellValue date = cells.get(headers.get("Date"));
+        if (date != null && date.text() && StringUtils.isAlpha(date.raw()) && StringUtils.isAllUpperCase(date.raw())) {
+            ImmutableMap.Builder<String, String> config = ImmutableMap.builder();
+            cells.forEach((column, cell) -> {
+                if (column < headerNames.length && headerNames[column] != null) {
+                    config.put(headerNames[column], cell.formatted());
+                }
+            });
+            configRowsBuilder.put(date.raw(), config.buildOrThrow());
+        }
+
+        String[] rowValues = new String[headerNames.length];
+        cells.forEach((column, cell) -> {
+            if (column < headerNames.length) {
+                rowValues[column] = Strings.nullToEmpty(cell.raw());
+            }
+        });
+        if (columnsBuilder.addRow(rowValues) >= 0) {
+            rowsBuilder.add(rowId);
+        }
+    }
+
+    /**
+     * Parses sheet, passing rows to handler.
+     *
+     * @param name
+     * 	name of sheet, null for first one
+     * @param rowHandler
+     * 	receives rows, in sheet order
+     * @param links
+     * 	receives hyperlinks, skipped if null
+     *
+     * @return
+     * 	true if sheet was found
+     */
+    private boolean parseSheet(String name, RowHandler rowHandler, Map<CellAddress, String> links) throws IOException, OpenXML4JException, SAXException
+    {
+        openPackage();
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (sheets.hasNext()) {
+            try (InputStream data = sheets.next()) {
+                if (name != null && !name.equals(sheets.getSheetName())) {
+                    continue;
+                }
+                XMLReader parser;
+                try {
+                    parser = XMLHelper.newXMLReader();
+                }
+                catch (ParserConfigurationException ex) {
+                    throw new IOException(ex);
+                }
+                parser.setContentHandler(new SheetHandler(sheets.getSheetPart(), rowHandler, links));
+                parser.parse(new InputSource(data));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void openPackage() throws IOException, OpenXML4JException, SAXException
+    {
+        if (pkg == null) {
+            pkg = OPCPackage.open(filePath.toFile(), PackageAccess.READ);
+            reader = new XSSFReader(pkg);
+            sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            styles = reader.getStylesTable();
+        }
+    }
+
+    /**
+     * Parsed content of the table.
+     */
+    record Snapshot(
+            String[] headerNames,
+            Map<String, Map<String, String>> configRows,
+            ColumnarTable columns,
+            int[] ordinalToRow,
+            Map<CellAddress, String> hyperlinks
+    )
+    {
+    }
+
+    private record CellValue(String raw, String formatted, boolean text)
+    {
+    }
+
+    @FunctionalInterface
+    private interface RowHandler
+    {
+        void row(int rowId, Map<Integer, CellValue> cells);
+    }
+
+    /**
+     * Converts sheet XML into rows of cells.  Raw values follow {@link XlsTableUpdator} cell reading, formatted ones
+     * follow {@link XlsTableUpdator#DATA_FORMATTER}.
+     */
+    private class SheetHandler extends DefaultHandler
+    {
+        private final PackagePart part;
+
+        private final RowHandler rowHandler;
+
+        private final Map<CellAddress, String> links;
+
+        private Map<Integer, CellValue> cells;
+
+        private int rowId = -1;
+
+        private int column;
+
+        private String type;
+
+        private String style;
+
+        private final StringBuilder value = new StringBuilder();
+
+        private final StringBuilder formula = new StringBuilder();
+
+        private StringBuilder collecting;
+
+        public SheetHandler(PackagePart part, RowHandler rowHandler, Map<CellAddress, String> links)
+        {
+            this.part = part;
+            this.rowHandler = rowHandler;
+            this.links = links;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+        {
+            switch (localName) {
+            case "row" -> {
+                String r = attributes.getValue("r");
+                rowId = r == null ? rowId + 1 : Integer.parseInt(r) - 1;
+                cells = new HashMap<>();
+                column = -1;
+            }
+            case "c" -> {
+                String r = attributes.getValue("r");
+                column = r == null ? column + 1 : new CellReference(r).getCol();
+                type = attributes.getValue("t");
+                style = attributes.getValue("s");
+                value.setLength(0);
+                formula.setLength(0);
+            }
+            case "v", "t" -> {
+                if (cells != null) {
+                    collecting = value;
+                }
+            }
+            case "f" -> collecting = formula;
+            case "hyperlink" -> {
+                if (links != null) {
+                    addHyperlink(attributes);
+                }
+            }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+        {
+            switch (localName) {
+            case "v", "t", "f" -> collecting = null;
+            case "c" -> cells.put(column, toCellValue());
+            case "row" -> {
+                rowHandler.row(rowId, cells);
+                cells = null;
+            }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+        {
+            if (collecting != null) {
+                collecting.append(ch, start, length);
+            }
+        }
+
+        private CellValue toCellValue()
+        {
+            if (!formula.isEmpty()) {
+                return new CellValue(formula.toString(), formula.toString(), false);
+            }
+            String content = value.toString();
+            switch (Strings.nullToEmpty(type)) {
+            case "s":
+                String shared = sharedStrings.getItemAt(Integer.parseInt(content)).getString();
+                return new CellValue(shared, shared, true);
+
+            case "inlineStr":
+                return new CellValue(content, content, true);
+
+            case "str":
+                return new CellValue(content, content, false);
+
+            case "b":
+                return new CellValue(null, content.equals("1") ? "TRUE" : "FALSE", false);
+
+            case "e":
+                return new CellValue(null, content, false);
+
+            default:
+                if (content.isEmpty()) {
+                    return new CellValue(null, "", false);
+                }
+                double number = Double.parseDouble(content);
+                String raw = (long) number == number ? Long.toString((long) number) : Double.toString(number);
+                XSSFCellStyle cellStyle = style == null ? null : styles.getStyleAt(Integer.parseInt(style));
+                String formatted = cellStyle == null ?
+                        XlsTableUpdator.DATA_FORMATTER.formatRawCellContents(number, 0, "General") :
+                        XlsTableUpdator.DATA_FORMATTER.formatRawCellContents(number, cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+                return new CellValue(raw, formatted, false);
+            }
+        }
+
+        private void addHyperlink(Attributes attributes)
+        {
+            String address = attributes.getValue("location");
+            String relationId = attributes.getValue(RELATIONSHIPS_NS, "id");
+            if (relationId != null) {
+                PackageRelationship relationship = part.getRelationship(relationId);
+                if (relationship != null) {
+                    address = relationship.getTargetURI().toString();
+                }
+            }
+            if (address == null) {
+                return;
+            }
+            for (CellAddress cell: CellRangeAddress.valueOf(attributes.getValue("ref"))) {
+                links.put(cell, address);
+            }
+        }
+    }
+}
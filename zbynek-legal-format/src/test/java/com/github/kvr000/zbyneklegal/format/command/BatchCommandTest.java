@@ -0,0 +1,144 @@
+package com.github.kvr000.zbyneklegal.format.command;
+
+import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
+import com.google.inject.Guice;
+import net.dryuf.cmdline.app.AppContext;
+import net.dryuf.cmdline.app.BeanFactory;
+import net.dryuf.cmdline.app.CommonAppContext;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.file.PathUtils;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertThrows;
+
+
+public class BatchCommandTest
+{
+	private Path directory;
+
+	@BeforeMethod
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory("BatchCommandTest");
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException
+	{
+		PathUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void execute_whenLineReadsIndexSavedByPreviousLine_seesSavedValues() throws Exception
+	{
+		Path document = directory.resolve("a.pdf");
+		Files.copy(Paths.get("src/test/resources/com/github/kvr000/zbyneklegal/format/pdf/FivePageDocument.pdf"), document);
+		Path index = directory.resolve("index.xlsx");
+		try (Workbook workbook = new XSSFWorkbook(); OutputStream output = Files.newOutputStream(index)) {
+			Sheet sheet = workbook.createSheet("Index");
+			addRow(sheet, 0, "Name", "Date", "SHA256", "Media", "Media SHA256", "K Exh");
+			addRow(sheet, 1, document.toString(), "2020-01-01", "", "", "", "1");
+			workbook.write(output);
+		}
+		Path archive = directory.resolve("out.zip");
+		Path script = directory.resolve("script.txt");
+		Files.write(script, List.of(
+			"-l '" + index + "' update-checksum",
+			"# checksums are written by previous line",
+			"-l '" + index + "' -k K -o '" + archive + "' zip"
+		));
+
+		AppContext appContext = new CommonAppContext(Guice.createInjector(new ZbynekLegalFormat.GuiceModule()).getInstance(BeanFactory.class));
+		int exit = ZbynekLegalFormat.runCommand(appContext, List.of("batch", script.toString()));
+
+		assertEquals(exit, 0);
+		try (Workbook workbook = new XSSFWorkbook(index.toFile())) {
+			assertEquals(workbook.getSheetAt(0).getRow(1).getCell(2).getStringCellValue(), DigestUtils.sha256Hex(Files.readAllBytes(document)));
+		}
+		try (ZipFile zip = new ZipFile(archive.toFile())) {
+			assertNotNull(zip.getEntry("a.pdf"));
+		}
+	}
+
+	@Test
+	public void splitArguments_whenPlain_splitsByWhitespace() throws IOException
+	{
+		assertEquals(BatchCommand.splitArguments("  -l index.xlsx\tzip  -o out.zip "), List.of("-l", "index.xlsx", "zip", "-o", "out.zip"));
+	}
+
+	@Test
+	public void splitArguments_whenEmptyOrComment_returnsEmpty() throws IOException
+	{
+		assertEquals(BatchCommand.splitArguments(""), List.of());
+		assertEquals(BatchCommand.splitArguments("   "), List.of());
+		assertEquals(BatchCommand.splitArguments("# comment"), List.of());
+	}
+
+	@Test
+	public void splitArguments_whenTrailingComment_ignoresIt() throws IOException
+	{
+		assertEquals(BatchCommand.splitArguments("zip # -o out.zip"), List.of("zip"));
+		assertEquals(BatchCommand.splitArguments("a#b"), List.of("a#b"));
+	}
+
+	@Test
+	public void splitArguments_whenSingleQuotes_keepsContentLiterally() throws IOException
+	{
+		assertEquals(BatchCommand.splitArguments("'a b' 'c\\d' 'e\"f' '#g'"), List.of("a b", "c\\d", "e\"f", "#g"));
+	}
+
+	@Test
+	public void splitArguments_whenDoubleQuotes_supportsEscapes() throws IOException
+	{
+		assertEquals(BatchCommand.splitArguments("\"a b\" \"c\\\"d\" \"e'f\" \"g\\\\h\""), List.of("a b", "c\"d", "e'f", "g\\h"));
+	}
+
+	@Test
+	public void splitArguments_whenBackslash_escapesNextCharacter() throws IOException
+	{
+		assertEquals(BatchCommand.splitArguments("a\\ b \\#c \\'d\\'"), List.of("a b", "#c", "'d'"));
+	}
+
+	@Test
+	public void splitArguments_whenAdjacentParts_joinsThem() throws IOException
+	{
+		assertEquals(BatchCommand.splitArguments("a'b c'\"d\"e ''"), List.of("ab cde", ""));
+	}
+
+	@Test
+	public void splitArguments_whenUnterminatedQuote_throws()
+	{
+		assertThrows(IOException.class, () -> BatchCommand.splitArguments("'abc"));
+		assertThrows(IOException.class, () -> BatchCommand.splitArguments("\"abc"));
+	}
+
+	@Test
+	public void splitArguments_whenTrailingBackslash_throws()
+	{
+		assertThrows(IOException.class, () -> BatchCommand.splitArguments("abc\\"));
+	}
+
+	private static void addRow(Sheet sheet, int number, String... values)
+	{
+		Row row = sheet.createRow(number);
+		for (int i = 0; i < values.length; ++i) {
+			row.createCell(i).setCellValue(values[i]);
+		}
+	}
+}
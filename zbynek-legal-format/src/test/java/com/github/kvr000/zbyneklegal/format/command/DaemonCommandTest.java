@@ -0,0 +1,58 @@
+package com.github.kvr000.zbyneklegal.format.command;
+
+import org.apache.commons.io.file.PathUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class DaemonCommandTest
+{
+	private Path directory;
+
+	@BeforeMethod
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory("DaemonCommandTest");
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException
+	{
+		PathUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void isDaemonDirectory_whenWorkingDirectory_returnsTrue()
+	{
+		assertTrue(DaemonCommand.isDaemonDirectory(Paths.get("").toAbsolutePath()));
+	}
+
+	@Test
+	public void isDaemonDirectory_whenLinkToWorkingDirectory_returnsTrue() throws IOException
+	{
+		Path link = Files.createSymbolicLink(directory.resolve("link"), Paths.get("").toAbsolutePath());
+
+		assertTrue(DaemonCommand.isDaemonDirectory(link));
+	}
+
+	@Test
+	public void isDaemonDirectory_whenOtherDirectory_returnsFalse()
+	{
+		assertFalse(DaemonCommand.isDaemonDirectory(directory));
+	}
+
+	@Test
+	public void isDaemonDirectory_whenMissing_returnsFalse()
+	{
+		assertFalse(DaemonCommand.isDaemonDirectory(directory.resolve("missing")));
+	}
+}
@@ -0,0 +1,192 @@
+package com.github.kvr000.zbyneklegal.format.command;
+
+import com.github.kvr000.zbyneklegal.format.ZbynekLegalFormat;
+import com.github.kvr000.zbyneklegal.format.file.FileChecksums;
+import com.github.kvr000.zbyneklegal.format.storage.StorageRepository;
+import com.github.kvr000.zbyneklegal.format.storage.local.LocalStorageRepository;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Provides;
+import com.google.inject.util.Modules;
+import net.dryuf.cmdline.app.AppContext;
+import net.dryuf.cmdline.app.BeanFactory;
+import net.dryuf.cmdline.app.CommonAppContext;
+import org.apache.commons.io.file.PathUtils;
+import org.apache.poi.common.usermodel.HyperlinkType;
+import org.apache.poi.ss.usermodel.Hyperlink;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+
+public class SyncFilesCommandTest
+{
+	private Path directory;
+
+	private Path local;
+
+	private Path index;
+
+	private String remoteUrl;
+
+	private byte[] content;
+
+	private final List<Long> offsets = new CopyOnWriteArrayList<>();
+
+	@BeforeMethod
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory("SyncFilesCommandTest");
+		Path remote = Files.createDirectory(directory.resolve("remote"));
+		local = Files.createDirectory(directory.resolve("local"));
+		content = new byte[100_000];
+		new Random(0).nextBytes(content);
+		Files.write(remote.resolve("a.pdf"), content);
+
+		remoteUrl = "file://localhost" + remote.resolve("a.pdf");
+		index = local.resolve("index.xlsx");
+		writeIndex(Map.of("a", remoteUrl));
+		offsets.clear();
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException
+	{
+		PathUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void execute_whenMissing_downloads() throws Exception
+	{
+		assertEquals(runSync(), 0);
+
+		assertEquals(Files.readAllBytes(local.resolve("a.pdf")), content);
+		assertEquals(offsets, List.of(0L));
+	}
+
+	@Test
+	public void execute_whenUpToDate_skips() throws Exception
+	{
+		Files.write(local.resolve("a.pdf"), content);
+
+		assertEquals(runSync(), 0);
+
+		assertEquals(offsets, List.of());
+	}
+
+	@Test
+	public void execute_whenPartFileExists_resumes() throws Exception
+	{
+		Files.write(local.resolve("a.pdf.part"), Arrays.copyOf(content, 40_000));
+
+		assertEquals(runSync(), 0);
+
+		assertEquals(Files.readAllBytes(local.resolve("a.pdf")), content);
+		assertFalse(Files.exists(local.resolve("a.pdf.part")));
+		assertEquals(offsets, List.of(40_000L));
+	}
+
+	@Test
+	public void execute_whenPartFileCorrupted_deletesAndRetries() throws Exception
+	{
+		byte[] corrupted = Arrays.copyOf(content, 40_000);
+		corrupted[1000] ^= 1;
+		Files.write(local.resolve("a.pdf.part"), corrupted);
+
+		assertEquals(runSync(), 0);
+
+		assertEquals(Files.readAllBytes(local.resolve("a.pdf")), content);
+		assertFalse(Files.exists(local.resolve("a.pdf.part")));
+		assertEquals(offsets, List.of(40_000L, 0L));
+	}
+
+	@Test
+	public void execute_whenPartFileLongerThanRemote_restarts() throws Exception
+	{
+		byte[] longer = Arrays.copyOf(content, content.length + 10);
+		Files.write(local.resolve("a.pdf.part"), longer);
+
+		assertEquals(runSync(), 0);
+
+		assertEquals(Files.readAllBytes(local.resolve("a.pdf")), content);
+		assertEquals(offsets, List.of(0L));
+	}
+
+	@Test
+	public void execute_whenOtherEntryMetadataFails_downloadsRest() throws Exception
+	{
+		writeIndex(Map.of("a", remoteUrl, "b", "https://example.com/b.pdf"));
+
+		assertEquals(runSync(), 1);
+
+		assertEquals(Files.readAllBytes(local.resolve("a.pdf")), content);
+		assertEquals(offsets, List.of(0L));
+	}
+
+	private void writeIndex(Map<String, String> entries) throws IOException
+	{
+		try (Workbook workbook = new XSSFWorkbook(); OutputStream output = Files.newOutputStream(index)) {
+			Sheet sheet = workbook.createSheet("Index");
+			Row header = sheet.createRow(0);
+			List<String> names = List.of("Name", "Date", "SHA256", "Media");
+			for (int i = 0; i < names.size(); ++i) {
+				header.createCell(i).setCellValue(names.get(i));
+			}
+			for (Map.Entry<String, String> entry: new TreeMap<>(entries).entrySet()) {
+				Row row = sheet.createRow(sheet.getLastRowNum() + 1);
+				row.createCell(0).setCellValue(local.resolve(entry.getKey()).toString());
+				Hyperlink link = workbook.getCreationHelper().createHyperlink(HyperlinkType.URL);
+				link.setAddress(entry.getValue());
+				row.getCell(0).setHyperlink(link);
+				row.createCell(1).setCellValue("2020-01-01");
+			}
+			workbook.write(output);
+		}
+	}
+
+	private int runSync() throws Exception
+	{
+		AppContext appContext = new CommonAppContext(Guice.createInjector(
+			Modules.override(new ZbynekLegalFormat.GuiceModule()).with(new RecordingStorageModule())
+		).getInstance(BeanFactory.class));
+		return ZbynekLegalFormat.runCommand(appContext, List.of("-l", index.toString(), "sync-files"));
+	}
+
+	private class RecordingStorageModule extends AbstractModule
+	{
+		@Provides
+		@Singleton
+		public StorageRepository storageRepository(FileChecksums fileChecksums)
+		{
+			return new LocalStorageRepository(fileChecksums)
+			{
+				@Override
+				public InputStream downloadFile(String url, long offset) throws IOException
+				{
+					offsets.add(offset);
+					return super.downloadFile(url, offset);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package com.github.kvr000.zbyneklegal.format.file;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.file.PathUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+public class ChecksumCacheTest
+{
+	private Path directory;
+
+	private Path index;
+
+	private Path database;
+
+	private Path file;
+
+	private final AtomicInteger hashed = new AtomicInteger();
+
+	private final FileChecksums fileChecksums = new FileChecksums()
+	{
+		@Override
+		public Checksums checksum(Path file) throws IOException
+		{
+			hashed.incrementAndGet();
+			return super.checksum(file);
+		}
+	};
+
+	@BeforeMethod
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory("ChecksumCacheTest");
+		index = directory.resolve("index.xlsx");
+		database = directory.resolve(".index.xlsx.checksums");
+		file = directory.resolve("a.pdf");
+		Files.writeString(file, "first content");
+		hashed.set(0);
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException
+	{
+		PathUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void checksum_whenHashed_returnsChecksums() throws IOException
+	{
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			FileChecksums.Checksums checksums = cache.checksum(file);
+
+			assertEquals(checksums.sha256(), DigestUtils.sha256Hex("first content"));
+			assertEquals(checksums.md5(), DigestUtils.md5Hex("first content"));
+		}
+	}
+
+	@Test
+	public void checksum_whenStatSame_skipsHashing() throws IOException
+	{
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			cache.checksum(file);
+		}
+		assertTrue(Files.exists(database));
+
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			assertEquals(cache.checksum(file).sha256(), DigestUtils.sha256Hex("first content"));
+			assertEquals(cache.checksum(file).sha256(), DigestUtils.sha256Hex("first content"));
+		}
+		assertEquals(hashed.get(), 1);
+	}
+
+	@Test
+	public void checksum_whenStatChanged_rehashes() throws IOException
+	{
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			cache.checksum(file);
+		}
+		FileTime modified = Files.getLastModifiedTime(file);
+		Files.writeString(file, "other content");
+		Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 1000));
+
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			assertEquals(cache.checksum(file).sha256(), DigestUtils.sha256Hex("other content"));
+		}
+		assertEquals(hashed.get(), 2);
+	}
+
+	@Test
+	public void checksum_whenOnlyModificationTimeChanged_rehashes() throws IOException
+	{
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			cache.checksum(file);
+		}
+		Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			cache.checksum(file);
+		}
+		assertEquals(hashed.get(), 2);
+	}
+
+	@Test
+	public void checksum_whenVerify_rehashes() throws IOException
+	{
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			cache.checksum(file);
+		}
+
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, true)) {
+			cache.checksum(file);
+		}
+		assertEquals(hashed.get(), 2);
+	}
+
+	@Test
+	public void open_whenDatabaseTruncated_rehashesAndRewrites() throws IOException
+	{
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			cache.checksum(file);
+		}
+		byte[] content = Files.readAllBytes(database);
+		Files.write(database, Arrays.copyOf(content, content.length - 10));
+
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			assertEquals(cache.checksum(file).sha256(), DigestUtils.sha256Hex("first content"));
+		}
+		assertEquals(hashed.get(), 2);
+		assertEquals(Files.readAllBytes(database), content);
+	}
+
+	@Test
+	public void open_whenDatabaseGarbage_ignoresIt() throws IOException
+	{
+		Files.write(database, "not a database".getBytes(StandardCharsets.UTF_8));
+
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			assertEquals(cache.checksum(file).sha256(), DigestUtils.sha256Hex("first content"));
+		}
+		assertEquals(hashed.get(), 1);
+	}
+
+	@Test
+	public void close_whenFileDeleted_prunesEntry() throws IOException
+	{
+		Path other = directory.resolve("b.pdf");
+		Files.writeString(other, "second");
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			cache.checksum(file);
+			cache.checksum(other);
+		}
+		long fullSize = Files.size(database);
+		Files.delete(other);
+		Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			cache.checksum(file);
+		}
+		assertTrue(Files.size(database) < fullSize);
+	}
+
+	@Test
+	public void close_whenNothingChanged_doesNotWrite() throws IOException
+	{
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			cache.checksum(file);
+		}
+		Files.setLastModifiedTime(database, FileTime.fromMillis(0));
+
+		try (ChecksumCache cache = ChecksumCache.open(index, fileChecksums, false)) {
+			cache.checksum(file);
+		}
+		assertEquals(Files.getLastModifiedTime(database), FileTime.fromMillis(0));
+	}
+}
@@ -0,0 +1,143 @@
+package com.github.kvr000.zbyneklegal.format.indexfile;
+
+import com.github.kvr000.zbyneklegal.format.table.ColumnarTable;
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+
+public class IndexReaderTest
+{
+    private static final String[] HEADERS = { "ID", "Name", "Main Exh", "Reply Exh" };
+
+    private static final String[][] ROWS = {
+        { "TABMAP", "config", "x", "x" },
+        { "A", "First", "1", "" },
+        { "B", "Second", "exclude", "2" },
+        { "C", "Third", "exclude:later", null },
+        { "D", "Fourth", "ref:A", "ref:B" },
+        { "E", "Fifth", "", "5" },
+        { "F", "Sixth", null, null },
+        { "BASE", "config", "x", "" },
+        { "G", "Seventh", "7", "7" },
+    };
+
+    @Test
+    public void readIndex_whenKeys_matchesRowFiltering() throws IOException
+    {
+        IndexReader reader = createReader();
+
+        for (List<String> keys: Arrays.asList(null, List.<String>of(), List.of("Main"), List.of("Reply"), List.of("Main", "Reply"))) {
+            assertEquals(reader.readIndex(keys), expectedIndex(keys), "keys=" + keys);
+        }
+    }
+
+    @Test
+    public void readIndex_whenKeys_returnsIncludedIds() throws IOException
+    {
+        IndexReader reader = createReader();
+
+        assertEquals(reader.readIndex(null).keySet(), Set.of("A", "B", "C", "D", "E", "F", "G"));
+        assertEquals(reader.readIndex(List.of("Main")).keySet(), Set.of("A", "G"));
+        assertEquals(reader.readIndex(List.of("Reply")).keySet(), Set.of("B", "E", "G"));
+        assertEquals(reader.readIndex(List.of("Main", "Reply")).keySet(), Set.of("A", "B", "E", "G"));
+    }
+
+    @Test
+    public void readIndex_whenUnknownKey_throws()
+    {
+        IndexReader reader = createReader();
+
+        assertThrows(IOException.class, () -> reader.readIndex(List.of("Main", "Unknown")));
+    }
+
+    @Test
+    public void isExhibitIncluded_whenKeys_matchesRowFiltering()
+    {
+        IndexReader reader = createReader();
+
+        for (String[] row: ROWS) {
+            if (row[0].equals("TABMAP") || row[0].equals("BASE")) {
+                continue;
+            }
+            for (List<String> keys: List.of(List.<String>of(), List.of("Main"), List.of("Reply"), List.of("Main", "Reply"))) {
+                assertEquals(reader.isExhibitIncluded(row[0], keys), isIncluded(toMap(row), keys), "id=" + row[0] + " keys=" + keys);
+            }
+            assertTrue(reader.isExhibitIncluded(row[0], null));
+        }
+        assertFalse(reader.isExhibitIncluded("A", List.of("Unknown")));
+    }
+
+    @Test
+    public void isExhibitIncluded_whenUnknownId_throws()
+    {
+        IndexReader reader = createReader();
+
+        assertThrows(IllegalArgumentException.class, () -> reader.isExhibitIncluded("X", List.of("Main")));
+    }
+
+    @Test
+    public void isExhibitIncluded_whenConfigId_throws()
+    {
+        IndexReader reader = createReader();
+
+        assertThrows(IllegalArgumentException.class, () -> reader.isExhibitIncluded("TABMAP", List.of("Main")));
+    }
+
+    private static IndexReader createReader()
+    {
+        ColumnarTable.Builder builder = new ColumnarTable.Builder(HEADERS, "ID");
+        for (String[] row: ROWS) {
+            builder.addRow(row);
+        }
+        ImmutableMap.Builder<String, Integer> headers = ImmutableMap.builder();
+        for (int i = 0; i < HEADERS.length; ++i) {
+            headers.put(HEADERS[i], i);
+        }
+        return new IndexReader(headers.buildOrThrow(), builder.build());
+    }
+
+    /**
+     * Filters rows one by one, the way the index was originally read.
+     */
+    private static Map<String, Map<String, String>> expectedIndex(Collection<String> keys)
+    {
+        Map<String, Map<String, String>> result = new LinkedHashMap<>();
+        for (String[] row: ROWS) {
+            if (!row[0].equals("TABMAP") && !row[0].equals("BASE") && (keys == null || isIncluded(toMap(row), keys))) {
+                result.put(row[0], toMap(row));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isIncluded(Map<String, String> row, Collection<String> keys)
+    {
+        return keys.stream()
+                .map(key -> row.get(key + " Exh"))
+                .anyMatch(s -> s != null && !s.isEmpty() && !s.equals("exclude") && !s.startsWith("exclude:") && !s.startsWith("ref:"));
+    }
+
+    private static Map<String, String> toMap(String[] row)
+    {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < HEADERS.length; ++i) {
+            if (row[i] != null) {
+                map.put(HEADERS[i], row[i]);
+            }
+        }
+        return map;
+    }
+}
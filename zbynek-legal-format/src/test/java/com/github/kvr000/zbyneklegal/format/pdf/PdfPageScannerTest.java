@@ -0,0 +1,48 @@
+package com.github.kvr000.zbyneklegal.format.pdf;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.testng.annotations.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class PdfPageScannerTest
+{
+	private static final Path FIVE_PAGE_DOCUMENT = Paths.get("src/test/resources/com/github/kvr000/zbyneklegal/format/pdf/FivePageDocument.pdf");
+
+	@Test
+	public void scanPages_whenLetterDocument_returnsGeometry() throws Exception
+	{
+		List<PdfPageScanner.PageGeometry> pages = new PdfPageScanner().scanPages(FIVE_PAGE_DOCUMENT);
+
+		assertEquals(pages.size(), 5);
+		for (PdfPageScanner.PageGeometry page: pages) {
+			assertEquals(page.rotation(), 0);
+			assertFalse(page.isRotated());
+			assertEquals(page.rotatedWidth(), 612.0f, 0.01f);
+			assertEquals(page.rotatedHeight(), 792.0f, 0.01f);
+		}
+	}
+
+	@Test
+	public void countPages_whenLetterDocument_returnsCount() throws Exception
+	{
+		assertEquals(new PdfPageScanner().countPages(FIVE_PAGE_DOCUMENT), 5);
+	}
+
+	@Test
+	public void pageGeometry_whenRotated_swapsSizes()
+	{
+		PdfPageScanner.PageGeometry page = new PdfPageScanner.PageGeometry(new PDRectangle(100, 200), 270);
+
+		assertTrue(page.isRotated());
+		assertEquals(page.rotatedWidth(), 200.0f, 0.01f);
+		assertEquals(page.rotatedHeight(), 100.0f, 0.01f);
+	}
+}
@@ -0,0 +1,118 @@
+package com.github.kvr000.zbyneklegal.format.pdf;
+
+import org.apache.commons.io.file.PathUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class StampedExhibitCacheTest
+{
+	private static final Path FIVE_PAGE_DOCUMENT = Paths.get("src/test/resources/com/github/kvr000/zbyneklegal/format/pdf/FivePageDocument.pdf");
+
+	private Path directory;
+
+	private StampedExhibitCache cache;
+
+	private final AtomicInteger stamped = new AtomicInteger();
+
+	@BeforeMethod
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory("StampedExhibitCacheTest");
+		cache = new StampedExhibitCache(new PdfFiles(new PdfPageScanner()), directory.resolve("cache"));
+		stamped.set(0);
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException
+	{
+		PathUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void loadOrStamp_whenSameParameters_hits() throws IOException
+	{
+		load(FIVE_PAGE_DOCUMENT, List.of("A", 1, "Exhibit A"));
+		load(FIVE_PAGE_DOCUMENT, List.of("A", 1, "Exhibit A"));
+
+		assertEquals(stamped.get(), 1);
+	}
+
+	@Test
+	public void loadOrStamp_whenParameterChanged_misses() throws IOException
+	{
+		load(FIVE_PAGE_DOCUMENT, List.of("A", 1, "Exhibit A"));
+		load(FIVE_PAGE_DOCUMENT, List.of("B", 1, "Exhibit A"));
+		load(FIVE_PAGE_DOCUMENT, List.of("A", 2, "Exhibit A"));
+		load(FIVE_PAGE_DOCUMENT, List.of("A", 1, "Exhibit B"));
+
+		assertEquals(stamped.get(), 4);
+	}
+
+	@Test
+	public void loadOrStamp_whenParametersShifted_misses() throws IOException
+	{
+		load(FIVE_PAGE_DOCUMENT, List.of("A", "B"));
+		load(FIVE_PAGE_DOCUMENT, List.of("A\0B"));
+		load(FIVE_PAGE_DOCUMENT, List.of("A", "B", ""));
+
+		assertEquals(stamped.get(), 3);
+	}
+
+	@Test
+	public void loadOrStamp_whenNullAndNullString_misses() throws IOException
+	{
+		load(FIVE_PAGE_DOCUMENT, Arrays.asList("A", null));
+		load(FIVE_PAGE_DOCUMENT, List.of("A", "null"));
+
+		assertEquals(stamped.get(), 2);
+	}
+
+	@Test
+	public void parametersChecksum_whenParametersShiftedOrNull_differs()
+	{
+		Set<String> checksums = new HashSet<>(List.of(
+			StampedExhibitCache.parametersChecksum(List.of("A", "B")),
+			StampedExhibitCache.parametersChecksum(List.of("A\0B")),
+			StampedExhibitCache.parametersChecksum(Arrays.asList("A", null)),
+			StampedExhibitCache.parametersChecksum(List.of("A", "null"))
+		));
+
+		assertEquals(checksums.size(), 4);
+		assertEquals(StampedExhibitCache.parametersChecksum(List.of("A", "B")), StampedExhibitCache.parametersChecksum(List.of("A", "B")));
+	}
+
+	@Test
+	public void loadOrStamp_whenContentChanged_misses() throws IOException
+	{
+		Path input = directory.resolve("input.pdf");
+		Files.copy(FIVE_PAGE_DOCUMENT, input);
+		load(input, List.of("A"));
+		Files.write(input, new byte[]{ '\n' }, StandardOpenOption.APPEND);
+		load(input, List.of("A"));
+
+		assertEquals(stamped.get(), 2);
+	}
+
+	private void load(Path input, List<?> parameters) throws IOException
+	{
+		try (PDDocument doc = cache.loadOrStamp(input, parameters, d -> stamped.incrementAndGet())) {
+			assertEquals(doc.getNumberOfPages(), 5);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.github.kvr000.zbyneklegal.format.pdf;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+
+public class StreamingPdfWriterTest
+{
+	@Test
+	public void appendDocument_whenMultipleDocuments_containsAllPages() throws Exception
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (StreamingPdfWriter writer = new StreamingPdfWriter(output)) {
+			for (int i = 0; i < 2; ++i) {
+				try (PDDocument doc = Loader.loadPDF(new File("src/test/resources/com/github/kvr000/zbyneklegal/format/pdf/FivePageDocument.pdf"))) {
+					writer.appendDocument(doc);
+				}
+			}
+		}
+
+		try (PDDocument result = Loader.loadPDF(output.toByteArray())) {
+			assertEquals(result.getNumberOfPages(), 10);
+		}
+	}
+
+	@Test
+	public void appendDocument_whenSourceLengthWrong_writesCopiedLength() throws Exception
+	{
+		byte[] content = "q 1 0 0 1 0 0 cm Q\n".getBytes(StandardCharsets.ISO_8859_1);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (PDDocument doc = new PDDocument(); StreamingPdfWriter writer = new StreamingPdfWriter(output)) {
+			PDPage page = new PDPage();
+			COSStream stream = doc.getDocument().createCOSStream();
+			try (OutputStream streamOutput = stream.createRawOutputStream()) {
+				streamOutput.write(content);
+			}
+			stream.setLong(COSName.LENGTH, 9999);
+			page.getCOSObject().setItem(COSName.CONTENTS, stream);
+			doc.addPage(page);
+			writer.appendDocument(doc);
+		}
+
+		String text = output.toString(StandardCharsets.ISO_8859_1);
+		assertFalse(text.contains("9999"));
+		try (PDDocument result = Loader.loadPDF(output.toByteArray())) {
+			COSStream stream = (COSStream) result.getPage(0).getCOSObject().getDictionaryObject(COSName.CONTENTS);
+			assertEquals(stream.getLength(), content.length);
+			try (InputStream raw = stream.createRawInputStream()) {
+				assertEquals(raw.readAllBytes(), content);
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.github.kvr000.zbyneklegal.format.storage;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+
+public class DownloadSchedulerTest
+{
+    private static final Duration BACKOFF = Duration.ofMillis(1);
+
+    @Test(timeOut = 10_000)
+    public void submit_whenFailing_retriesUntilSuccess()
+    {
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<Long> future;
+        try (DownloadScheduler scheduler = new DownloadScheduler(2, 2, 3, BACKOFF)) {
+            future = scheduler.submit("file://localhost/a", 10, () -> {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new IOException("failed attempt");
+                }
+                return 10L;
+            });
+        }
+
+        assertEquals((long) future.join(), 10L);
+        assertEquals(attempts.get(), 3);
+    }
+
+    @Test(timeOut = 10_000)
+    public void submit_whenRetriesExhausted_fails()
+    {
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<Long> future;
+        try (DownloadScheduler scheduler = new DownloadScheduler(2, 2, 2, BACKOFF)) {
+            future = scheduler.submit("file://localhost/a", 10, () -> {
+                attempts.incrementAndGet();
+                throw new IOException("failed attempt");
+            });
+        }
+
+        CompletionException ex = expectThrows(CompletionException.class, future::join);
+        assertTrue(ex.getCause() instanceof IOException);
+        assertEquals(attempts.get(), 3);
+    }
+
+    @Test(timeOut = 10_000)
+    public void submit_whenSameHost_limitsConcurrency()
+    {
+        HostCounter first = new HostCounter();
+        HostCounter second = new HostCounter();
+        try (DownloadScheduler scheduler = new DownloadScheduler(4, 1, 0, BACKOFF)) {
+            for (int i = 0; i < 4; ++i) {
+                scheduler.submit("https://first.example.com/" + i, i, first::download);
+                scheduler.submit("https://second.example.com/" + i, i, second::download);
+            }
+        }
+
+        assertEquals(first.completed.get(), 4);
+        assertEquals(second.completed.get(), 4);
+        assertEquals(first.peak.get(), 1);
+        assertEquals(second.peak.get(), 1);
+    }
+
+    @Test(timeOut = 10_000)
+    public void submit_whenQueued_startsSmallestFirst() throws Exception
+    {
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<Long> order = new CopyOnWriteArrayList<>();
+        try (DownloadScheduler scheduler = new DownloadScheduler(1, 1, 0, BACKOFF)) {
+            scheduler.submit("https://example.com/blocker", 0, () -> {
+                try {
+                    assertTrue(blocked.await(5, TimeUnit.SECONDS));
+                }
+                catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                return 0L;
+            });
+            for (long size: List.of(300L, Long.MAX_VALUE, 100L, 200L)) {
+                scheduler.submit("https://example.com/" + size, size, () -> {
+                    order.add(size);
+                    return size;
+                });
+            }
+            blocked.countDown();
+        }
+
+        assertEquals(order, List.of(100L, 200L, 300L, Long.MAX_VALUE));
+    }
+
+    private static class HostCounter
+    {
+        final AtomicInteger running = new AtomicInteger();
+
+        final AtomicInteger peak = new AtomicInteger();
+
+        final AtomicInteger completed = new AtomicInteger();
+
+        long download() throws IOException
+        {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            finally {
+                running.decrementAndGet();
+            }
+            completed.incrementAndGet();
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.kvr000.zbyneklegal.format.storage.local;
+
+import com.github.kvr000.zbyneklegal.format.file.FileChecksums;
+import com.github.kvr000.zbyneklegal.format.storage.MetadataBatch;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.file.PathUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertThrows;
+
+
+public class LocalStorageRepositoryTest
+{
+    private final LocalStorageRepository repository = new LocalStorageRepository(new FileChecksums());
+
+    private Path directory;
+
+    private Path file;
+
+    private String url;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("LocalStorageRepositoryTest");
+        file = directory.resolve("document.pdf");
+        Files.writeString(file, "0123456789");
+        url = "file://localhost" + file.toAbsolutePath();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        PathUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void metadata_whenExists_returnsFileInfo() throws IOException
+    {
+        Map<String, String> metadata = repository.metadata(url);
+
+        assertEquals(metadata, Map.of(
+                "filename", "document.pdf",
+                "fileExtension", "pdf",
+                "md5", DigestUtils.md5Hex("0123456789"),
+                "size", "10"
+        ));
+    }
+
+    @Test
+    public void metadata_whenMissing_returnsNull() throws IOException
+    {
+        assertNull(repository.metadata(url + ".missing"));
+    }
+
+    @Test
+    public void metadata_whenMultiple_returnsExisting() throws IOException
+    {
+        MetadataBatch metadata = repository.metadata(List.of(url, url + ".missing"));
+
+        assertEquals(metadata.getMetadata().keySet(), Set.of(url));
+        assertEquals(metadata.get(url).get("size"), "10");
+        assertNull(metadata.get(url + ".missing"));
+        assertEquals(metadata.getFailures(), Map.of());
+    }
+
+    @Test
+    public void metadata_whenMultipleWithInvalid_recordsFailureForInvalidOnly() throws IOException
+    {
+        String invalid = "file://localhost/%zz";
+        MetadataBatch metadata = repository.metadata(List.of(invalid, url));
+
+        assertEquals(metadata.get(url).get("size"), "10");
+        assertEquals(metadata.getFailures().keySet(), Set.of(invalid));
+        assertThrows(IOException.class, () -> metadata.get(invalid));
+    }
+
+    @Test
+    public void downloadFile_whenFromStart_returnsContent() throws IOException
+    {
+        try (InputStream input = repository.downloadFile(url)) {
+            assertEquals(new String(input.readAllBytes()), "0123456789");
+        }
+    }
+
+    @Test
+    public void downloadFile_whenOffset_returnsRemainder() throws IOException
+    {
+        try (InputStream input = repository.downloadFile(url, 4)) {
+            assertEquals(new String(input.readAllBytes()), "456789");
+        }
+    }
+
+    @Test
+    public void downloadFile_whenOtherHost_throws()
+    {
+        assertThrows(IOException.class, () -> repository.downloadFile("file://remote" + file.toAbsolutePath()));
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.kvr000.zbyneklegal.format.table;
+
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+
+public class ColumnarTableTest
+{
+    @Test
+    public void build_whenRows_storesColumns()
+    {
+        ColumnarTable.Builder builder = new ColumnarTable.Builder(new String[]{ "Exhibit", null, "Name", "Pages" }, "Exhibit");
+        assertEquals(builder.addRow(new String[]{ "A", "ignored", "First", "3" }), 0);
+        assertEquals(builder.addRow(new String[]{ "", "ignored", "No id", "1" }), -1);
+        assertEquals(builder.addRow(new String[]{ "B", "ignored" }), 1);
+        ColumnarTable table = builder.build();
+
+        assertEquals(table.size(), 2);
+        assertEquals(table.getId(0), "A");
+        assertEquals(table.getId(1), "B");
+        assertEquals(table.getColumn("Name"), new String[]{ "First", null });
+        assertEquals(table.getColumn("Pages"), new String[]{ "3", null });
+        assertNull(table.getColumn("ignored"));
+        assertEquals(table.getValue(0, "Name"), "First");
+        assertNull(table.getValue(1, "Name"));
+        assertNull(table.getValue(0, "Unknown"));
+    }
+
+    @Test
+    public void build_whenRepeatedValues_sharesInstance()
+    {
+        ColumnarTable.Builder builder = new ColumnarTable.Builder(new String[]{ "Exhibit", "Status" }, "Exhibit");
+        builder.addRow(new String[]{ "A", new String("done") });
+        builder.addRow(new String[]{ "B", new String("done") });
+        ColumnarTable table = builder.build();
+
+        assertSame(table.getValue(0, "Status"), table.getValue(1, "Status"));
+    }
+
+    @Test
+    public void builder_whenMissingIdColumn_throws()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new ColumnarTable.Builder(new String[]{ "Name" }, "Exhibit"));
+    }
+
+    @Test
+    public void addRow_whenDuplicateId_throws()
+    {
+        ColumnarTable.Builder builder = new ColumnarTable.Builder(new String[]{ "Exhibit", "Name" }, "Exhibit");
+        builder.addRow(new String[]{ "A", "First" });
+
+        assertThrows(IllegalArgumentException.class, () -> builder.addRow(new String[]{ "A", "Second" }));
+    }
+
+    @Test
+    public void getOrdinal_whenExisting_returnsOrdinal()
+    {
+        ColumnarTable table = sample();
+
+        assertEquals(table.getOrdinal("A"), 0);
+        assertEquals(table.getOrdinal("B"), 1);
+        assertEquals(table.getOrdinal("C"), 2);
+    }
+
+    @Test
+    public void getOrdinal_whenMissing_returnsMinusOne()
+    {
+        assertEquals(sample().getOrdinal("X"), -1);
+    }
+
+    @Test
+    public void getRow_whenNullCells_omitsThem()
+    {
+        Map<String, String> row = sample().getRow(1);
+
+        assertEquals(row, ImmutableMap.of("Exhibit", "B", "Pages", "2"));
+        assertEquals(row.size(), 2);
+        assertEquals(row.get("Pages"), "2");
+        assertNull(row.get("Name"));
+        assertFalse(row.containsKey("Name"));
+        assertTrue(row.containsKey("Exhibit"));
+        assertEquals(List.copyOf(row.keySet()), List.of("Exhibit", "Pages"));
+    }
+
+    @Test
+    public void asMap_whenFromEntries_matchesEntries()
+    {
+        Map<String, Map<String, String>> entries = new LinkedHashMap<>();
+        entries.put("C", ImmutableMap.of("Exhibit", "C", "Name", "Third"));
+        entries.put("A", ImmutableMap.of("Exhibit", "A", "Name", "First", "Pages", "1"));
+
+        ColumnarTable table = ColumnarTable.fromEntries(List.of("Exhibit", "Name", "Pages"), "Exhibit", entries);
+
+        assertEquals(table.asMap(), entries);
+        assertEquals(List.copyOf(table.asMap().keySet()), List.of("C", "A"));
+    }
+
+    @Test
+    public void fromColumns_whenRestored_equalsOriginal()
+    {
+        ColumnarTable original = sample();
+        String[] names = original.getNames();
+        String[][] columns = Arrays.stream(names).map(original::getColumn).toArray(String[][]::new);
+        String[] ids = { original.getId(0), original.getId(1), original.getId(2) };
+
+        ColumnarTable restored = ColumnarTable.fromColumns(names, columns, ids);
+
+        assertEquals(restored.asMap(), original.asMap());
+        assertEquals(restored.getOrdinal("C"), 2);
+    }
+
+    private static ColumnarTable sample()
+    {
+        ColumnarTable.Builder builder = new ColumnarTable.Builder(new String[]{ "Exhibit", "Name", "Pages" }, "Exhibit");
+        builder.addRow(new String[]{ "A", "First", "1" });
+        builder.addRow(new String[]{ "B", null, "2" });
+        builder.addRow(new String[]{ "C", "Third", "3" });
+        return builder.build();
+    }
+}
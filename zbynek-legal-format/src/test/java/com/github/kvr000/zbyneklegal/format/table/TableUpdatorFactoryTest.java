@@ -0,0 +1,159 @@
+package com.github.kvr000.zbyneklegal.format.table;
+
+import org.apache.commons.io.file.PathUtils;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+
+public class TableUpdatorFactoryTest
+{
+    private Path directory;
+
+    private Path file;
+
+    private final TableUpdatorFactory factory = new TableUpdatorFactory();
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("TableUpdatorFactoryTest");
+        file = directory.resolve("index.xlsx");
+        try (Workbook workbook = new XSSFWorkbook(); OutputStream output = Files.newOutputStream(file)) {
+            Sheet sheet = workbook.createSheet("Index");
+            addRow(sheet, 0, "Name", "Date", "Value");
+            addRow(sheet, 1, "a", "2020-01-01", "old");
+            workbook.write(output);
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        PathUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void openTableUpdator_whenShared_returnsSameTable() throws IOException
+    {
+        Closeable shared = factory.shareTables();
+        try {
+            TableUpdator first = factory.openTableUpdator(file, null, "Name");
+            first.close();
+            TableUpdator second = factory.openTableUpdator(file, null, "Name");
+            second.save();
+            TableUpdator third = factory.openTableReader(file, null, "Name");
+
+            assertSame(second, first);
+            assertSame(third, first);
+        }
+        finally {
+            shared.close();
+        }
+    }
+
+    @Test
+    public void openTableReader_whenChangesSaved_readsNewValues() throws IOException
+    {
+        Closeable shared = factory.shareTables();
+        try {
+            TableUpdator updator = factory.openTableUpdator(file, null, "Name");
+            updator.setValue("a", "Value", "new");
+            updator.save();
+            updator.close();
+
+            TableUpdator reader = factory.openTableReader(file, null, "Name");
+
+            assertNotSame(reader, updator);
+            assertEquals(reader.getOptionalValue("a", "Value"), "new");
+            assertEquals(reader.listEntries().get("a").get("Value"), "new");
+            assertEquals(reader.listColumns().getValue(0, "Value"), "new");
+        }
+        finally {
+            shared.close();
+        }
+    }
+
+    @Test
+    public void openTableUpdator_whenChangesSaved_readsNewValues() throws IOException
+    {
+        Closeable shared = factory.shareTables();
+        try {
+            TableUpdator updator = factory.openTableUpdator(file, null, "Name");
+            updator.setValue("a", "Value", "new");
+            updator.save();
+            updator.close();
+
+            TableUpdator second = factory.openTableUpdator(file, null, "Name");
+
+            assertEquals(second.getOptionalValue("a", "Value"), "new");
+        }
+        finally {
+            shared.close();
+        }
+    }
+
+    @Test
+    public void openTableUpdator_whenChangesNotSaved_discardsChanges() throws IOException
+    {
+        Closeable shared = factory.shareTables();
+        try {
+            TableUpdator failed = factory.openTableUpdator(file, null, "Name");
+            failed.setValue("a", "Value", "abandoned");
+            failed.close();
+
+            TableUpdator second = factory.openTableUpdator(file, null, "Name");
+            second.save();
+            second.close();
+            TableUpdator reader = factory.openTableReader(file, null, "Name");
+
+            assertNotSame(second, failed);
+            assertEquals(second.getOptionalValue("a", "Value"), "old");
+            assertEquals(reader.getOptionalValue("a", "Value"), "old");
+        }
+        finally {
+            shared.close();
+        }
+    }
+
+    @Test
+    public void openTableUpdator_whenFileModified_reopens() throws IOException
+    {
+        Closeable shared = factory.shareTables();
+        try {
+            TableUpdator first = factory.openTableUpdator(file, null, "Name");
+            Files.write(file, Files.readAllBytes(file));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+
+            TableUpdator second = factory.openTableUpdator(file, null, "Name");
+
+            assertNotSame(second, first);
+        }
+        finally {
+            shared.close();
+        }
+    }
+
+    private static void addRow(Sheet sheet, int number, String... values)
+    {
+        Row row = sheet.createRow(number);
+        for (int i = 0; i < values.length; ++i) {
+            row.createCell(i).setCellValue(values[i]);
+        }
+    }
+}
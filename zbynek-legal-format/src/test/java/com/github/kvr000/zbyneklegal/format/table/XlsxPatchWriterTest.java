@@ -0,0 +1,251 @@
+package com.github.kvr000.zbyneklegal.format.table;
+
+import org.apache.commons.io.file.PathUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+
+public class XlsxPatchWriterTest
+{
+    private static final String SHEET_PART = "/xl/worksheets/sheet1.xml";
+
+    private static final String NAMESPACE = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    private Path directory;
+
+    private Path file;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("XlsxPatchWriterTest");
+        file = directory.resolve("test.xlsx");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        PathUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void patch_whenExistingCells_updated() throws Exception
+    {
+        createWorkbook("<worksheet xmlns=\"" + NAMESPACE + "\"><sheetData>" +
+                "<row r=\"1\">" + inlineCell("A1", "a1") + inlineCell("B1", "b1") + "</row>" +
+                "<row r=\"2\">" + inlineCell("A2", "a2") + inlineCell("B2", "b2") + "</row>" +
+                "</sheetData></worksheet>");
+
+        XlsxPatchWriter.patch(file, SHEET_PART, Map.of(new CellAddress("B1"), "new-b1", new CellAddress("A2"), "new-a2"));
+
+        try (Workbook workbook = new XSSFWorkbook(file.toFile())) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertEquals(value(sheet, "A1"), "a1");
+            assertEquals(value(sheet, "B1"), "new-b1");
+            assertEquals(value(sheet, "A2"), "new-a2");
+            assertEquals(value(sheet, "B2"), "b2");
+        }
+    }
+
+    @Test
+    public void patch_whenNewCellsInExistingRow_inserted() throws Exception
+    {
+        createWorkbook("<worksheet xmlns=\"" + NAMESPACE + "\"><sheetData>" +
+                "<row r=\"1\">" + inlineCell("B1", "b1") + inlineCell("D1", "d1") + "</row>" +
+                "</sheetData></worksheet>");
+
+        XlsxPatchWriter.patch(file, SHEET_PART, Map.of(
+                new CellAddress("A1"), "a1",
+                new CellAddress("C1"), "c1",
+                new CellAddress("E1"), "e1"
+        ));
+
+        try (Workbook workbook = new XSSFWorkbook(file.toFile())) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertEquals(value(sheet, "A1"), "a1");
+            assertEquals(value(sheet, "B1"), "b1");
+            assertEquals(value(sheet, "C1"), "c1");
+            assertEquals(value(sheet, "D1"), "d1");
+            assertEquals(value(sheet, "E1"), "e1");
+        }
+    }
+
+    @Test
+    public void patch_whenNewRows_inserted() throws Exception
+    {
+        createWorkbook("<worksheet xmlns=\"" + NAMESPACE + "\"><sheetData>" +
+                "<row r=\"2\">" + inlineCell("A2", "a2") + "</row>" +
+                "<row r=\"4\">" + inlineCell("A4", "a4") + "</row>" +
+                "</sheetData></worksheet>");
+
+        XlsxPatchWriter.patch(file, SHEET_PART, Map.of(
+                new CellAddress("A1"), "a1",
+                new CellAddress("B3"), "b3",
+                new CellAddress("C6"), "c6"
+        ));
+
+        try (Workbook workbook = new XSSFWorkbook(file.toFile())) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertEquals(value(sheet, "A1"), "a1");
+            assertEquals(value(sheet, "A2"), "a2");
+            assertEquals(value(sheet, "B3"), "b3");
+            assertEquals(value(sheet, "A4"), "a4");
+            assertEquals(value(sheet, "C6"), "c6");
+        }
+    }
+
+    @Test
+    public void patch_whenEmptySheetData_inserted() throws Exception
+    {
+        createWorkbook("<worksheet xmlns=\"" + NAMESPACE + "\"><sheetData/></worksheet>");
+
+        XlsxPatchWriter.patch(file, SHEET_PART, Map.of(new CellAddress("B2"), "b2"));
+
+        try (Workbook workbook = new XSSFWorkbook(file.toFile())) {
+            assertEquals(value(workbook.getSheetAt(0), "B2"), "b2");
+        }
+    }
+
+    @Test
+    public void patch_whenSelfClosingRowAndCell_expanded() throws Exception
+    {
+        createWorkbook("<worksheet xmlns=\"" + NAMESPACE + "\"><sheetData>" +
+                "<row r=\"1\"/>" +
+                "<row r=\"2\"><c r=\"A2\" s=\"0\"/>" + inlineCell("B2", "b2") + "</row>" +
+                "<row r=\"3\"/>" +
+                "</sheetData></worksheet>");
+
+        XlsxPatchWriter.patch(file, SHEET_PART, Map.of(new CellAddress("A1"), "a1", new CellAddress("A2"), "a2"));
+
+        try (Workbook workbook = new XSSFWorkbook(file.toFile())) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertEquals(value(sheet, "A1"), "a1");
+            assertEquals(value(sheet, "A2"), "a2");
+            assertEquals(value(sheet, "B2"), "b2");
+            assertNull(sheet.getRow(2).getCell(0));
+        }
+    }
+
+    @Test
+    public void patch_whenPrefixedNamespace_keepsPrefix() throws Exception
+    {
+        createWorkbook("<x:worksheet xmlns:x=\"" + NAMESPACE + "\"><x:sheetData>" +
+                "<x:row r=\"1\"><x:c r=\"A1\" t=\"inlineStr\"><x:is><x:t>a1</x:t></x:is></x:c></x:row>" +
+                "<x:row r=\"3\"/>" +
+                "</x:sheetData></x:worksheet>");
+
+        XlsxPatchWriter.patch(file, SHEET_PART, Map.of(
+                new CellAddress("B1"), "b1",
+                new CellAddress("A2"), "a2",
+                new CellAddress("A3"), "a3"
+        ));
+
+        try (Workbook workbook = new XSSFWorkbook(file.toFile())) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertEquals(value(sheet, "A1"), "a1");
+            assertEquals(value(sheet, "B1"), "b1");
+            assertEquals(value(sheet, "A2"), "a2");
+            assertEquals(value(sheet, "A3"), "a3");
+        }
+    }
+
+    @Test
+    public void patch_whenSpecialCharacters_escaped() throws Exception
+    {
+        createWorkbook("<worksheet xmlns=\"" + NAMESPACE + "\"><sheetData>" +
+                "<row r=\"1\">" + inlineCell("A1", "a1") + "</row>" +
+                "</sheetData></worksheet>");
+
+        XlsxPatchWriter.patch(file, SHEET_PART, Map.of(
+                new CellAddress("A1"), "a & b < c > d \"e\" 'f'",
+                new CellAddress("B1"), " padded ",
+                new CellAddress("A2"), "\u010dau &amp;"
+        ));
+
+        try (Workbook workbook = new XSSFWorkbook(file.toFile())) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertEquals(value(sheet, "A1"), "a & b < c > d \"e\" 'f'");
+            assertEquals(value(sheet, "B1"), " padded ");
+            assertEquals(value(sheet, "A2"), "\u010dau &amp;");
+        }
+    }
+
+    @Test
+    public void patch_whenUnchangedRowsAfterLastChange_copied() throws Exception
+    {
+        createWorkbook("<worksheet xmlns=\"" + NAMESPACE + "\"><sheetData>" +
+                "<row r=\"1\">" + inlineCell("A1", "a1") + "</row>" +
+                "<row r=\"2\">" + inlineCell("A2", "a2") + "</row>" +
+                "<row r=\"3\">" + inlineCell("A3", "a3") + "</row>" +
+                "</sheetData></worksheet>");
+
+        XlsxPatchWriter.patch(file, SHEET_PART, Map.of(new CellAddress("A1"), "new-a1"));
+
+        try (Workbook workbook = new XSSFWorkbook(file.toFile())) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertEquals(value(sheet, "A1"), "new-a1");
+            assertEquals(value(sheet, "A2"), "a2");
+            assertEquals(value(sheet, "A3"), "a3");
+        }
+    }
+
+    private static String inlineCell(String address, String value)
+    {
+        return "<c r=\"" + address + "\" t=\"inlineStr\"><is><t>" + value + "</t></is></c>";
+    }
+
+    private static String value(Sheet sheet, String address)
+    {
+        CellAddress cellAddress = new CellAddress(address);
+        Row row = sheet.getRow(cellAddress.getRow());
+        Cell cell = row == null ? null : row.getCell(cellAddress.getColumn());
+        return cell == null ? null : cell.getStringCellValue();
+    }
+
+    /**
+     * Creates workbook by POI and replaces its first sheet by provided XML.
+     */
+    private void createWorkbook(String sheetXml) throws IOException
+    {
+        Path original = directory.resolve("original.xlsx");
+        try (Workbook workbook = new XSSFWorkbook(); OutputStream output = Files.newOutputStream(original)) {
+            workbook.createSheet("Sheet1");
+            workbook.write(output);
+        }
+        try (
+            ZipInputStream input = new ZipInputStream(Files.newInputStream(original));
+            ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(file))
+        ) {
+            for (ZipEntry entry; (entry = input.getNextEntry()) != null; ) {
+                output.putNextEntry(new ZipEntry(entry.getName()));
+                if (("/" + entry.getName()).equals(SHEET_PART)) {
+                    output.write(("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" + sheetXml).getBytes(StandardCharsets.UTF_8));
+                }
+                else {
+                    input.transferTo(output);
+                }
+                output.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.kvr000.zbyneklegal.format.table;
+
+import org.apache.commons.io.file.PathUtils;
+import org.apache.poi.common.usermodel.HyperlinkType;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Hyperlink;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+
+public class XlsxSnapshotCacheTest
+{
+    private static final FileTime OLD_TIME = FileTime.fromMillis(0);
+
+    private Path directory;
+
+    private Path file;
+
+    private Path snapshotFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("XlsxSnapshotCacheTest");
+        file = directory.resolve("index.xlsx");
+        snapshotFile = directory.resolve(".index.xlsx.snapshot");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        PathUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void open_whenSnapshotValid_restoresSameContent() throws IOException
+    {
+        createWorkbook("First");
+        Map<String, Map<String, String>> parsed;
+        try (XlsxStreamingTableUpdator table = XlsxSnapshotCache.open(file, "Index", "ID")) {
+            parsed = Map.copyOf(table.listEntries());
+        }
+        assertTrue(Files.exists(snapshotFile));
+        Files.setLastModifiedTime(snapshotFile, OLD_TIME);
+
+        try (XlsxStreamingTableUpdator table = XlsxSnapshotCache.open(file, "Index", "ID")) {
+            assertEquals(Files.getLastModifiedTime(snapshotFile), OLD_TIME);
+            assertEquals(table.listEntries(), parsed);
+            assertEquals(table.getHeaders(), Map.of("ID", 0, "Date", 1, "Name", 2));
+            assertEquals(table.getOptionalValue("A", "Name"), "First");
+            assertEquals(table.getUrl("A", "Name"), "https://example.com/a");
+            assertEquals(table.getOptionalConfig("BASE", "Name"), Optional.of("base-config"));
+            assertEquals(table.listColumns().getOrdinal("B"), 1);
+        }
+    }
+
+    @Test
+    public void open_whenFileChanged_reparses() throws IOException
+    {
+        createWorkbook("First");
+        try (XlsxStreamingTableUpdator table = XlsxSnapshotCache.open(file, "Index", "ID")) {
+            assertEquals(table.getOptionalValue("A", "Name"), "First");
+        }
+        Files.setLastModifiedTime(snapshotFile, OLD_TIME);
+        createWorkbook("Changed");
+
+        try (XlsxStreamingTableUpdator table = XlsxSnapshotCache.open(file, "Index", "ID")) {
+            assertEquals(table.getOptionalValue("A", "Name"), "Changed");
+        }
+        assertNotEquals(Files.getLastModifiedTime(snapshotFile), OLD_TIME);
+    }
+
+    @Test
+    public void open_whenFileChangedWithSameStat_reparses() throws IOException
+    {
+        createWorkbook("First");
+        FileTime modified = Files.getLastModifiedTime(file);
+        try (XlsxStreamingTableUpdator table = XlsxSnapshotCache.open(file, "Index", "ID")) {
+            assertEquals(table.getOptionalValue("A", "Name"), "First");
+        }
+        createWorkbook("Other");
+        Files.setLastModifiedTime(file, modified);
+
+        try (XlsxStreamingTableUpdator table = XlsxSnapshotCache.open(file, "Index", "ID")) {
+            assertEquals(table.getOptionalValue("A", "Name"), "Other");
+        }
+    }
+
+    @Test
+    public void open_whenSheetChanged_reparses() throws IOException
+    {
+        createWorkbook("First");
+        try (XlsxStreamingTableUpdator table = XlsxSnapshotCache.open(file, "Index", "ID")) {
+            assertEquals(table.getOptionalValue("A", "Name"), "First");
+        }
+        Files.setLastModifiedTime(snapshotFile, OLD_TIME);
+
+        try (XlsxStreamingTableUpdator table = XlsxSnapshotCache.open(file, "Other", "ID")) {
+            assertEquals(table.getOptionalValue("A", "Name"), "other-sheet");
+        }
+        assertNotEquals(Files.getLastModifiedTime(snapshotFile), OLD_TIME);
+    }
+
+    @Test
+    public void open_whenIdColumnChanged_reparses() throws IOException
+    {
+        createWorkbook("First");
+        try (XlsxStreamingTableUpdator table = XlsxSnapshotCache.open(file, "Index", "ID")) {
+            assertEquals(table.getOptionalValue("A", "Name"), "First");
+        }
+        Files.setLastModifiedTime(snapshotFile, OLD_TIME);
+
+        try (XlsxStreamingTableUpdator table = XlsxSnapshotCache.open(file, "Index", "Name")) {
+            assertEquals(table.getOptionalValue("First", "ID"), "A");
+        }
+        assertNotEquals(Files.getLastModifiedTime(snapshotFile), OLD_TIME);
+    }
+
+    @Test
+    public void open_whenSnapshotTruncated_reparses() throws IOException
+    {
+        createWorkbook("First");
+        XlsxSnapshotCache.open(file, "Index", "ID").close();
+        byte[] content = Files.readAllBytes(snapshotFile);
+        Files.write(snapshotFile, Arrays.copyOf(content, content.length / 2));
+
+        try (XlsxStreamingTableUpdator table = XlsxSnapshotCache.open(file, "Index", "ID")) {
+            assertEquals(table.getOptionalValue("A", "Name"), "First");
+        }
+        assertEquals(Files.size(snapshotFile), content.length);
+    }
+
+    private void createWorkbook(String firstName) throws IOException
+    {
+        try (Workbook workbook = new XSSFWorkbook(); OutputStream output = Files.newOutputStream(file)) {
+            Sheet index = workbook.createSheet("Index");
+            addRow(index, 0, "ID", "Date", "Name");
+            addRow(index, 1, "", "BASE", "base-config");
+            Row first = addRow(index, 2, "A", "2020-01-01", firstName);
+            Hyperlink link = workbook.getCreationHelper().createHyperlink(HyperlinkType.URL);
+            link.setAddress("https://example.com/a");
+            first.getCell(2).setHyperlink(link);
+            addRow(index, 3, "B", "2020-01-02", "Second");
+            Sheet other = workbook.createSheet("Other");
+            addRow(other, 0, "ID", "Date", "Name");
+            addRow(other, 1, "A", "2021-01-01", "other-sheet");
+            workbook.write(output);
+        }
+    }
+
+    private static Row addRow(Sheet sheet, int number, String... values)
+    {
+        Row row = sheet.createRow(number);
+        for (int i = 0; i < values.length; ++i) {
+            Cell cell = row.createCell(i);
+            cell.setCellValue(values[i]);
+        }
+        return row;
+    }
+}